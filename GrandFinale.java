@@ -40,9 +40,23 @@
 *This solution is significantly better than the other two provided by the guide mainly due to two reasons: reduces total number of searched nodes by using a heuristic and secondly we are able to find the optimal path on any maze and solve it instantaneously on its second run.
 */
 import java.util.Arrays; //some array libraries
-import java.util.ArrayList;
-import java.util.List;
+import java.awt.Point;
 import java.util.HashMap; //hashmap library
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService; // for writing checkpoints in the background
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
 import uk.ac.warwick.dcs.maze.logic.IRobot; //the warwick IRobot interface library
 
 public class GrandFinale {
@@ -53,7 +67,127 @@ public class GrandFinale {
 	private MazeTree node; // MazeTree object
 	private double hMultiplier;
 	private int[][] traversalArray;
+	private int traversalLength; // only the first traversalLength rows of traversalArray are part of the path as
+									// the array is scratch space owned by our MazeTree and reused between expansions
 	private int[][] finalPath;
+	private int robotX; // the robot and target locations are read once per tick (and once per run for the target)
+	private int robotY; // so that the rest of the tick can work with plain ints instead of fresh Point objects
+	private int targetX;
+	private int targetY;
+	private OccupancyMap occupancy; // what we've sensed about every cell so far, so each cell is only looked at once
+	private int lookCount; // how many times we've actually called robot.look() this solve
+	private long tickBudgetNanos = 1000000; // how long a single tick may spend planning (1ms)
+	private long solveBudgetNanos = 50000000; // how long we may spend improving the final path when we find the
+												// target (50ms)
+	private double initialEpsilon = 2.5; // how much the anytime search inflates its heuristic on its first pass
+	private long tickDeadline; // System.nanoTime() after which this tick stops planning
+	private AnytimeSearch anytimeSearch; // improves our final path over the map once we've found the target
+	private int[][] adoptedPath; // the anytime search path our finalPath was last built from
+	private int startX; // where the robot started its first run on this maze
+	private int startY;
+	private boolean exploring; // true once we've set up our tree and priority queue for this maze
+	private boolean bitboardMode; // plan the final path with a bitboard breadth first search instead of the anytime
+									// search
+	private BitboardSearch bitboardSearch; // the last bitboard search we ran, if any
+	private boolean flowFieldMode; // steer using a flow field shared by every robot heading for the same target
+	private int flowFieldSteps; // how many moves this robot made using only a flow field lookup
+	private int nodeBudget; // the most nodes our tree may hold at once, 0 means there's no limit
+	private int peakNodes; // the most nodes our tree has held at once this solve
+	private int reExpansions; // how many nodes we had to expand again because we forgot their children
+	private CoordinateMap backedUp; // nodes we put back in the queue after forgetting one of their children, along
+									// with the lowest node cost they forgot (stored as the bits of a double)
+	private CoordinateMap forgottenChildren; // which neighbours every node in backedUp forgot (1 north, 2 east, 4
+												// south, 8 west) so they come back however we've marked them since
+	private long[] deadEnds = new long[16]; // packed coordinates of expanded nodes that got no children, these can be
+											// forgotten for free when we're over budget
+	private int deadEndCount;
+	private int prunedCells; // dead ends we filled in while exploring
+	private int expansions; // how many nodes we expanded this solve
+	private long[] pruneStack = new long[16]; // scratch stack of packed cells to check for dead ends
+	private Checkpoint checkpoint; // where we save our first run so it can carry on after a restart, null if we don't
+	private int checkpointInterval; // how many ticks between checkpoints
+	private boolean treeRestarted; // we started a new tree since our last checkpoint
+	private CoordinateMap unverified; // passable cells we only know about from the checkpoint we carried on from,
+										// null unless we're carrying on from one
+	private long restartCell; // packed cell this controller started on, which is where a fresh start begins
+	private CoordinateMap walked; // cells we've stood on since carrying on from a checkpoint, these are real whether
+									// or not the checkpoint was
+	private CoordinateMap rejoinCells; // passable cells from a checkpoint our new tree hasn't joined up with yet,
+										// null once it has or if it never had to
+	private long rejoinCell; // packed cell we were on when the checkpoint was saved, which we explore towards until
+								// we join up with the map again
+
+	public void setFlowFieldMode(boolean enabled) // when lots of robots share one target they can all steer with one
+													// reverse search from the target instead of searching themselves
+	{
+		flowFieldMode = enabled;
+	}
+
+	public void setBitboardMode(boolean enabled) // every step costs the same so a breadth first search finds the
+													// shortest path too, and moving a whole row of bits at once is
+													// much quicker on big mazes than going cell by cell
+	{
+		bitboardMode = enabled;
+	}
+
+	public int getFlowFieldSteps() {
+		return flowFieldSteps;
+	}
+
+	public void setNodeBudget(int budget) // caps how many nodes we store for small heaps. Once the tree is full we
+											// forget the worst leaves in the queue and remember their cost on their
+											// parent instead (like SMA*), so we may have to expand some nodes twice
+	{
+		nodeBudget = Math.max(0, budget);
+	}
+
+	public int getPeakNodes() {
+		return peakNodes;
+	}
+
+	public int getReExpansions() {
+		return reExpansions;
+	}
+
+	public void setCheckpoint(String fileName, int intervalTicks) // saves our exploration to a file every so many
+																	// ticks during the first run. If we're restarted
+																	// on the same maze we pick up from the last save
+																	// instead of exploring it all over again
+	{
+		checkpoint = fileName == null ? null : new Checkpoint(new File(fileName));
+		checkpointInterval = Math.max(1, intervalTicks);
+	}
+
+	public void setTickBudget(long nanos) // caps the planning a single tick does, expanding nodes we already know
+											// about and improving the final path both stop when it runs out. Work
+											// that has to finish once it's started isn't capped, so a tick that
+											// walks a long way up the tree, starts a new tree or grows one of our
+											// hash maps can still take longer on a big maze
+	{
+		tickBudgetNanos = nanos;
+	}
+
+	public void setSolveBudget(long nanos) // caps the time spent planning the final path when the target is found,
+											// copying the map and filling in its dead ends included. Those and
+											// setting up the search can't stop part way, so on a big maze they can
+											// overrun it by themselves, and if our tree doesn't start at the start we
+											// keep searching past it until we have a path
+	{
+		solveBudgetNanos = nanos;
+	}
+
+	public void setInitialEpsilon(double epsilon) // higher values find a first path faster but a worse one
+	{
+		initialEpsilon = Math.max(1, epsilon);
+	}
+
+	public double getSuboptimalityBound() // our final path is at most this many times longer than the optimal path
+											// through the cells we know about
+	{
+		if (anytimeSearch != null)
+			return anytimeSearch.getBound();
+		return bitboardSearch != null && bitboardSearch.getPath() != null ? 1 : Double.POSITIVE_INFINITY;
+	}
 
 	public void reset() // reset our poll run on resets of the maze
 	{
@@ -62,6 +196,7 @@ public class GrandFinale {
 		pollRun = 0;
 		traversalArray = new int[0][2]; // resets the traverse array which allows the robot to visit any two nodes on
 										// its tree
+		traversalLength = 0;
 		whichCoord = 0; // resets the cooordinate selector variable
 	}
 
@@ -70,96 +205,475 @@ public class GrandFinale {
 		// if (pollRun % 1000 == 0) System.out.println("priority length " +
 		// ignore.getPriorityQueue().length);
 		// System.out.println(Arrays.deepToString(traversalArray));
-		int x1 = robot.getLocation().x;
-		int y1 = robot.getLocation().y;
+		tickDeadline = System.nanoTime() + tickBudgetNanos;
+		Point location = robot.getLocation(); // the only location lookup for this tick
+		robotX = location.x;
+		robotY = location.y;
+		int x1 = robotX;
+		int y1 = robotY;
+
+		if (pollRun == 0) // the target doesn't move during a run so we only ask for it once
+		{
+			Point target = robot.getTargetLocation();
+			targetX = target.x;
+			targetY = target.y;
+		}
 
 		if ((robot.getRuns() == 0) && (pollRun == 0))
-			initialiseBot(robot); // at the start of a fresh maze we initialise our arrays
-		if ((robot.getRuns() == 0) && (pollRun > 0))
+			startMaze(robot); // at the start of a fresh maze we forget everything we knew about the last one
+		if (robot.getRuns() == 0 && occupancy.get(x1, y1) != OccupancyMap.WALL)
+			occupancy.set(x1, y1, OccupancyMap.VISITED); // the robot is standing here so it's been here before (unless
+															// we've already filled it in as a dead end)
+
+		if (flowFieldMode && steerByFlowField(robot))
+			flowFieldSteps++; // somebody already worked out the way to the target from here
+		else if ((robot.getRuns() == 0) && exploring == false)
+			initialiseBot(robot); // the first time we have to search we initialise our arrays
+		else if (robot.getRuns() == 0)
 			forcePriorityNodeTraversal(robot); // Calls our traversal method to travel to a node based on the next node
 												// in our priority queue and follow the instructions to get there
-		if (robot.getRuns() != 0 && pollRun >= 0)
+		else {
+			if (anytimeSearch != null)
+				improveFinalPath(); // keep improving the final path a little bit every tick
 			pathFoundController(robot); // when we have completed a maze for the first time we tell it to follow the
 										// instructions set out to travel on the fastest path
+		}
+
+		if (checkpoint != null && robot.getRuns() == 0 && exploring && pollRun % checkpointInterval == 0)
+			saveCheckpoint(); // only the changes since the last save get written so this stays cheap
 
-		int targetX = robot.getTargetLocation().x; // gets the location of our target
-		int targetY = robot.getTargetLocation().y;
 		if (((x1 >= targetX - 1 && x1 <= targetX + 1) & (y1 == targetY))
 				| ((x1 == targetX) & (y1 >= targetY - 1 && y1 <= targetY + 1))) {
 			if (robot.getRuns() == 0)
 				checkDone(robot); // when we are near our target we call the checkDone method
 		}
 
+		if (unverified != null && robot.getRuns() == 0) {
+			walked.put(robotX, robotY, 1);
+			checkResumedMap(robot); // a checkpoint saved on another maze gives itself away sooner or later
+		}
+
 		pollRun++; // increment pollRun
 	}
 
+	private void startMaze(IRobot robot) // resets everything we know about the maze itself
+	{
+		restartCell = CoordinateMap.pack(robotX, robotY);
+		forgetMaze();
+		if (checkpoint != null && resumeCheckpoint(robot) == false) {
+			checkpoint.start(startX, startY, targetX, targetY); // nothing to carry on from so we start a new file
+			occupancy.startJournal();
+		}
+	}
+
+	private void forgetMaze() // we know nothing about the maze and start exploring it from where we were started
+	{
+		startX = CoordinateMap.unpackX(restartCell);
+		startY = CoordinateMap.unpackY(restartCell);
+		occupancy = new OccupancyMap(); // a fresh maze means we know nothing about any of the cells
+		lookCount = 0;
+		exploring = false;
+		anytimeSearch = null;
+		bitboardSearch = null;
+		adoptedPath = null;
+		flowFieldSteps = 0;
+		unverified = null;
+		rejoinCells = null;
+	}
+
+	private void saveCheckpoint() // writes the tree and map changes since our last save, then the queue, where we are
+									// on our path and our counters which are small enough to write out in full
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeBoolean(treeRestarted);
+			long[] treeJournal = node.getJournal();
+			out.writeInt(node.getJournalLength());
+			for (int i = 0; i < node.getJournalLength(); i++)
+				out.writeLong(treeJournal[i]);
+			long[] cellJournal = occupancy.getJournal();
+			out.writeInt(occupancy.getJournalLength());
+			for (int i = 0; i < occupancy.getJournalLength(); i++)
+				out.writeLong(cellJournal[i]);
+
+			out.writeInt(whichCoord); // a traversal path only ever runs along the tree between its two ends, so the
+			out.writeInt(traversalLength); // ends are enough to build it again
+			out.writeInt(traversalArray[0][0]);
+			out.writeInt(traversalArray[0][1]);
+			out.writeInt(traversalArray[traversalLength - 1][0]);
+			out.writeInt(traversalArray[traversalLength - 1][1]);
+			out.writeInt(priorityNode.getQueueSize());
+			for (int i = 0; i < priorityNode.getQueueSize(); i++) {
+				out.writeInt(priorityNode.getQueueX(i));
+				out.writeInt(priorityNode.getQueueY(i));
+				out.writeDouble(priorityNode.getQueueCost(i));
+			}
+			out.writeInt(backedUp.size());
+			for (int slot = 0; slot < backedUp.capacity(); slot++) {
+				if (backedUp.keyAt(slot) != CoordinateMap.EMPTY) {
+					long cell = backedUp.keyAt(slot);
+					out.writeLong(cell);
+					out.writeLong(backedUp.valueAt(slot));
+					out.writeLong(forgottenChildren.get(CoordinateMap.unpackX(cell), CoordinateMap.unpackY(cell), 0));
+				}
+			}
+			out.writeInt(deadEndCount);
+			for (int i = 0; i < deadEndCount; i++)
+				out.writeLong(deadEnds[i]);
+			out.writeInt(lookCount);
+			out.writeInt(expansions);
+			out.writeInt(prunedCells);
+			out.writeInt(peakNodes);
+			out.writeInt(reExpansions);
+		} catch (IOException e) {
+			return; // writing to memory doesn't fail
+		}
+		checkpoint.append(bytes.toByteArray());
+		node.clearJournal();
+		occupancy.clearJournal();
+		treeRestarted = false;
+	}
+
+	private boolean resumeCheckpoint(IRobot robot) // replays every saved block onto a fresh tree and map, returns
+													// false if there was nothing saved for this maze that we can
+													// carry on from
+	{
+		ArrayList<byte[]> blocks = checkpoint.load(targetX, targetY);
+		if (blocks == null || blocks.isEmpty())
+			return false;
+
+		MazeTree tree = new MazeTree(0, 0, 0, 0);
+		tree.resetCoordinateArray();
+		OccupancyMap map = new OccupancyMap();
+		CoordinateMap restored = new CoordinateMap(); // every cell the checkpoint says is passable
+		CoordinateMap passable = new CoordinateMap(); // the same cells, which checking them doesn't take back out
+		int[] path = new int[6]; // where we were on our path, its length and its two ends
+		int[] queueXs = new int[0];
+		int[] queueYs = new int[0];
+		double[] queueCosts = new double[0];
+		CoordinateMap backedUpCosts = new CoordinateMap();
+		CoordinateMap forgottenCells = new CoordinateMap();
+		long[] deadEndCells = new long[16];
+		int deadEndLength = 0;
+		int[] counters = new int[5];
+		try {
+			for (byte[] block : blocks) {
+				DataInputStream in = new DataInputStream(new ByteArrayInputStream(block));
+				if (in.readBoolean()) {
+					tree = new MazeTree(0, 0, 0, 0); // we threw our old tree away and started again
+					tree.resetCoordinateArray();
+				}
+				int treeChanges = in.readInt();
+				for (int i = 0; i < treeChanges; i += 2) {
+					long child = in.readLong();
+					long parent = in.readLong();
+					if (parent == MazeTree.REMOVED)
+						tree.removeNode(CoordinateMap.unpackX(child), CoordinateMap.unpackY(child));
+					else
+						tree.AddNode(CoordinateMap.unpackX(parent), CoordinateMap.unpackY(parent),
+								CoordinateMap.unpackX(child), CoordinateMap.unpackY(child));
+				}
+				int cellChanges = in.readInt();
+				for (int i = 0; i < cellChanges; i++) {
+					long change = in.readLong();
+					int x1 = OccupancyMap.journalX(change);
+					int y1 = OccupancyMap.journalY(change);
+					int state = OccupancyMap.journalState(change);
+					map.set(x1, y1, state);
+					if (state == OccupancyMap.WALL) {
+						restored.remove(x1, y1); // a dead end we filled in
+						passable.remove(x1, y1);
+					} else {
+						restored.put(x1, y1, 1);
+						passable.put(x1, y1, 1);
+					}
+				}
+
+				for (int i = 0; i < 6; i++) // only the last block's path and queue matter but we still have to read
+					path[i] = in.readInt(); // past the older ones
+				int queueLength = in.readInt();
+				queueXs = new int[queueLength];
+				queueYs = new int[queueLength];
+				queueCosts = new double[queueLength];
+				for (int i = 0; i < queueLength; i++) {
+					queueXs[i] = in.readInt();
+					queueYs[i] = in.readInt();
+					queueCosts[i] = in.readDouble();
+				}
+				backedUpCosts = new CoordinateMap();
+				forgottenCells = new CoordinateMap();
+				int backedUpLength = in.readInt();
+				for (int i = 0; i < backedUpLength; i++) {
+					long cell = in.readLong();
+					backedUpCosts.put(CoordinateMap.unpackX(cell), CoordinateMap.unpackY(cell), in.readLong());
+					forgottenCells.put(CoordinateMap.unpackX(cell), CoordinateMap.unpackY(cell), in.readLong());
+				}
+				deadEndLength = in.readInt();
+				deadEndCells = new long[Math.max(16, deadEndLength)];
+				for (int i = 0; i < deadEndLength; i++)
+					deadEndCells[i] = in.readLong();
+				for (int i = 0; i < counters.length; i++)
+					counters[i] = in.readInt(); // look count, expansions, pruned cells, peak nodes, re-expansions
+			}
+		} catch (IOException e) {
+			return false; // every block passed its checksum so this only happens if the format changed
+		}
+		if (queueXs.length == 0)
+			return false;
+		unverified = restored; // a restart part way through a run puts us anywhere on the maze so where we are
+								// doesn't tell us much, but the checkpoint has to agree with the cells around us
+		for (int heading = IRobot.NORTH; heading <= IRobot.WEST; heading++) {
+			if (contradictsCheckpoint(robot, heading)) {
+				unverified = null;
+				System.out.println("Checkpoint doesn't match this maze, starting again");
+				return false;
+			}
+		}
+		walked = new CoordinateMap();
+		startX = checkpoint.getStartX();
+		startY = checkpoint.getStartY();
+		occupancy = map;
+		occupancy.startJournal();
+		lookCount += counters[0]; // on top of the looks we just made to check it
+		if (tree.containsNode(robotX, robotY) == false) // we moved off the tree we saved before we were stopped, so
+														// we keep the map but grow a new tree from here. Cells our
+														// old tree expanded have to be expandable again
+		{
+			occupancy.forgetVisits();
+			boolean joined = new BitboardSearch(occupancy, startX, startY, robotX, robotY).getPath() != null;
+			if (joined == false) // the moves since our last save are lost, so nothing we know joins us up with the
+									// start and we'd never plan a path from it through here
+			{
+				rejoinCells = passable;
+				rejoinCell = CoordinateMap.pack(startX, startY);
+				if (tree.containsNode(path[2], path[3]) && tree.containsNode(path[4], path[5])
+						&& path[0] < tree.fillTraverseArray(path[2], path[3], path[4], path[5])) {
+					int[][] saved = tree.getTraverseArray();
+					rejoinCell = CoordinateMap.pack(saved[path[0]][0], saved[path[0]][1]); // we can't be far from it
+				}
+				System.out.println("Resumed map from checkpoint, exploring back to where we left it");
+			} else
+				System.out.println("Resumed map from checkpoint, starting a new tree here");
+			return true;
+		}
+
+		node = tree;
+		tree.startJournal();
+		priorityNode = new PriorityNode(0, 0, 0);
+		priorityNode.resetQueueArray();
+		for (int i = 0; i < queueXs.length; i++)
+			priorityNode.appendNode(queueXs[i], queueYs[i], queueCosts[i]); // they were saved in order
+		backedUp = backedUpCosts;
+		forgottenChildren = forgottenCells;
+		deadEnds = deadEndCells;
+		deadEndCount = deadEndLength;
+		expansions = counters[1];
+		prunedCells = counters[2];
+		peakNodes = counters[3];
+		reExpansions = counters[4];
+		exploring = true;
+		treeRestarted = false;
+
+		boolean onPath = false;
+		if (node.containsNode(path[2], path[3]) && node.containsNode(path[4], path[5])) {
+			traversalLength = node.fillTraverseArray(path[2], path[3], path[4], path[5]);
+			traversalArray = node.getTraverseArray();
+			whichCoord = path[0];
+			onPath = traversalLength == path[1] && whichCoord < traversalLength
+					&& robotX == traversalArray[whichCoord][0] && robotY == traversalArray[whichCoord][1];
+			if (whichCoord > 0 && whichCoord < traversalLength)
+				onPath |= robotX == traversalArray[whichCoord - 1][0] && robotY == traversalArray[whichCoord - 1][1];
+		}
+		if (onPath == false) // we've been moved since the save (normally back to the start) so we head for the front
+								// of the queue from here instead
+		{
+			traversalLength = node.fillTraverseArray(robotX, robotY, priorityNode.getHeadX(),
+					priorityNode.getHeadY());
+			traversalArray = node.getTraverseArray();
+			whichCoord = 0;
+		}
+		System.out.println("Resumed from checkpoint: " + node.size() + " nodes, " + queueXs.length + " queued");
+		return true;
+	}
+
+	private boolean contradictsCheckpoint(IRobot robot, int heading) // looks at the cell next to us in this direction
+																		// if all we know about it came from the
+																		// checkpoint, true if it's really a wall
+	{
+		int x2 = robotX;
+		int y2 = robotY;
+		if (heading == IRobot.NORTH)
+			y2--;
+		else if (heading == IRobot.EAST)
+			x2++;
+		else if (heading == IRobot.SOUTH)
+			y2++;
+		else
+			x2--;
+		if (unverified.containsKey(x2, y2) == false)
+			return false;
+		unverified.remove(x2, y2); // we only need to see each one once
+		lookCount++;
+		return robot.look(lookHeading(robot, heading)) == IRobot.WALL;
+	}
+
+	private void checkResumedMap(IRobot robot) // before we move into a cell we only know about from the checkpoint we
+												// look at it, a wall there means the checkpoint was saved on another
+												// maze
+	{
+		if (contradictsCheckpoint(robot, robot.getHeading()))
+			discardResumedMap(robot);
+	}
+
+	private void discardResumedMap(IRobot robot) // forgets everything the checkpoint told us and starts exploring
+													// again from here as if there had never been one
+	{
+		System.out.println("Checkpoint doesn't match this maze, starting again");
+		int looks = lookCount;
+		CoordinateMap trail = walked;
+		forgetMaze();
+		lookCount = looks; // the looks we've made so far still count
+		checkpoint.start(startX, startY, targetX, targetY);
+		occupancy.startJournal();
+		for (int i = 0; i < trail.capacity(); i++) // we got here from where we were started one step at a time, so
+													// the cells we walked join us up with it again
+		{
+			long cell = trail.keyAt(i);
+			if (cell != CoordinateMap.EMPTY)
+				occupancy.set(CoordinateMap.unpackX(cell), CoordinateMap.unpackY(cell), OccupancyMap.OPEN);
+		}
+		occupancy.set(robotX, robotY, OccupancyMap.VISITED);
+		initialiseBot(robot); // this picks a new heading, the one we had came from the checkpoint's map
+	}
+
+	private boolean steerByFlowField(IRobot robot) // follows the shared flow field for our target if it covers the
+													// robot's cell, returns false if we have to find the way ourselves
+	{
+		FlowField field = FlowField.lookup(targetX, targetY);
+		if (field == null)
+			return false;
+		int heading = field.getHeading(robotX, robotY);
+		if (heading == -1)
+			return false; // the field doesn't know how to get here
+
+		int x2 = robotX; // the cell the field wants us to move into
+		int y2 = robotY;
+		if (heading == IRobot.NORTH)
+			y2--;
+		else if (heading == IRobot.EAST)
+			x2++;
+		else if (heading == IRobot.SOUTH)
+			y2++;
+		else
+			x2--;
+		if (cellState(robot, x2, y2) == OccupancyMap.WALL) // the field was built for a different maze
+		{
+			FlowField.invalidate(targetX, targetY, field);
+			exploring = false; // we've left our tree behind while following the field so we start a new one here
+			occupancy.forgetVisits(); // cells our old tree expanded have to be expandable again
+			return false;
+		}
+
+		robot.setHeading(heading);
+		return true;
+	}
+
 	private void initialiseBot(IRobot robot) // some initialization parameters to reset our data store and tell the
 												// robot how we want to search through our maze
 	{
-		int x1 = robot.getLocation().x;
-		int y1 = robot.getLocation().y;
+		int x1 = robotX;
+		int y1 = robotY;
 
 		node = new MazeTree(0, 0, 0, 0); // reset our MazeTree data store
 		priorityNode = new PriorityNode(0, 0, 0); // reset our priority queue data store
 		MazeTree node1 = new MazeTree(5000077, 5000077, x1, y1); // declares our root node. We can identify it as our
 																	// root node as if you get the parent for this node
 																	// then it should return 5000077 (it's prime)
-		PriorityNode priorityNode1 = new PriorityNode(x1, y1, 5000077); // declares our first priority node
 
 		node.setGCostMultiplier(1); // you can make the search "greedy" by setting the G Cost Multiplier to 0
 		hMultiplier = Math.sqrt(2); // you can make the robot act like Dijkstra's by setting the Heuristic
 									// Multiplier to 0
 
-		traversalArray = new int[0][2]; // reset our traverse array
-
 		node.resetCoordinateArray();
 		priorityNode.resetQueueArray();
+		if (checkpoint != null) {
+			node.startJournal(); // the next checkpoint has to tell a resume to throw its old tree away
+			treeRestarted = true;
+		}
+		exploring = true;
+		peakNodes = 0;
+		reExpansions = 0;
+		backedUp = new CoordinateMap();
+		forgottenChildren = new CoordinateMap();
+		deadEndCount = 0;
+		prunedCells = 0;
+		expansions = 0;
 
 		node.AddNode(node1); // adds our root node to the MazeTree hashmap
-		priorityNodeQueuer(robot, 0); // queues the first set of priority nodes surrounding the robot
+		priorityNodeQueuer(robot, x1, y1, 0); // queues the first set of priority nodes surrounding the robot
 
-		int targetX = priorityNode.getPriorityQueue()[0].getX();
-		int targetY = priorityNode.getPriorityQueue()[0].getY();
-		traversalArray = node.createTraverseArray(x1, y1, targetX, targetY);
+		int targetX = priorityNode.getHeadX();
+		int targetY = priorityNode.getHeadY();
+		traversalLength = node.fillTraverseArray(x1, y1, targetX, targetY);
+		traversalArray = node.getTraverseArray();
+		whichCoord = 0; // we might be starting over part way through a run after leaving a flow field
 		forcePriorityNodeTraversal(robot); // runs the robot to follow the expansion path so every path we expand is
 											// precalculated based on the data in our priorty queue and the path
-											// constructed by "createTraverseArray"
+											// constructed by "fillTraverseArray"
 	}
 
 	private void forcePriorityNodeTraversal(IRobot robot) {
-		int x1 = robot.getLocation().x; // predeclaring our coordinate values
-		int y1 = robot.getLocation().y;
+		int x1 = robotX; // predeclaring our coordinate values
+		int y1 = robotY;
 		int x2 = 0;
 		int y2 = 0;
 
-		int pos = wallCounter(robot); // int variable for the switch cases to check if it's in a corridor or junction
-
-		switch (pos) {
-			case 1:
-				node.setGCostMultiplier(1);
-				hMultiplier = Math.sqrt(2); // set multipliers back to default
-				break;
-			case 2:
-				node.setGCostMultiplier(0.01); // we do this in order for the robot to expand corridors more quickly as
-												// opposed to using a messier solution involving
-				hMultiplier = Math.sqrt(0.01); // set the multipliers really low for corridors
+		setMultipliers(wallCounter(robot, x1, y1)); // checks if it's in a corridor or junction
+		pruneDeadEnds(x1, y1); // now that we've seen everything around us we might be able to rule some cells out
+		pruneDeadEnds(x1, y1 - 1);
+		pruneDeadEnds(x1 + 1, y1);
+		pruneDeadEnds(x1, y1 + 1);
+		pruneDeadEnds(x1 - 1, y1);
+
+		int endX = traversalArray[traversalLength - 1][0];
+		int endY = traversalArray[traversalLength - 1][1];
+		if ((x1 != endX || y1 != endY) && occupancy.get(endX, endY) == OccupancyMap.WALL
+				&& node.containsNode(x1, y1)) // the node we were heading for turned out to be a dead end so we
+												// head for the next one in the queue instead
+		{
+			traversalLength = node.fillTraverseArray(x1, y1, priorityNode.getHeadX(), priorityNode.getHeadY());
+			traversalArray = node.getTraverseArray();
+			whichCoord = 0;
 		}
 
-		int arrayX = traversalArray[traversalArray.length - 1][0]; // once we have expanded on a node we look for a new
-																	// node to expand upon
-		int arrayY = traversalArray[traversalArray.length - 1][1]; // So essentially once the robot has reached its
-																	// short term target we tell the robot to construct
-																	// a new path and reset our whichCoord selector
-																	// variable
-
-		if (traversalArray.length != 0 && x1 == arrayX && y1 == arrayY) {
-			priorityNode.removeTraversedNode(); // remove the priority node that we expanded on
-			priorityNodeQueuer(robot, node.gCostCalculator(x1, y1)); // queue up a new set of nodes for the robot in the
-																		// priority queue
-			int targetX = priorityNode.getPriorityQueue()[0].getX();
-			int targetY = priorityNode.getPriorityQueue()[0].getY();
-			traversalArray = node.createTraverseArray(x1, y1, targetX, targetY); // calls our function to create a new
-																					// path to expand on a new node
+		int arrayX = traversalArray[traversalLength - 1][0]; // once we have expanded on a node we look for a new
+																// node to expand upon
+		int arrayY = traversalArray[traversalLength - 1][1]; // So essentially once the robot has reached its
+																// short term target we tell the robot to construct
+																// a new path and reset our whichCoord selector
+																// variable
+
+		if (traversalLength != 0 && x1 == arrayX && y1 == arrayY) {
+			int expanded = priorityNode.indexOf(x1, y1); // remove the priority node that we expanded on, it's
+															// normally at the front but a backed up parent could
+															// have jumped ahead of it
+			if (expanded != -1)
+				priorityNode.removeNodeAt(expanded);
+			priorityNodeQueuer(robot, x1, y1, node.gCostCalculator(x1, y1)); // queue up a new set of nodes for the
+																				// robot in the priority queue
+			expandKnownNodes(robot); // expand any nodes we already know everything about without walking there
+			if (priorityNode.getQueueSize() == 0 && unverified != null) // our frontier can only run out when the
+																		// checkpoint's map isn't this maze's
+			{
+				discardResumedMap(robot);
+				return;
+			}
+			int targetX = priorityNode.getHeadX();
+			int targetY = priorityNode.getHeadY();
+			traversalLength = node.fillTraverseArray(x1, y1, targetX, targetY); // calls our function to create a new
+																				// path to expand on a new node
+			traversalArray = node.getTraverseArray(); // the scratch array may have grown so we pick it up again
 
 			whichCoord = 0; // set our target as the first element in our traversal array once we have
 							// expanded a node
@@ -173,7 +687,7 @@ public class GrandFinale {
 									// whichCoord variable so that our target is now the next element in the
 									// traversalArray
 		{
-			if (whichCoord < traversalArray.length - 1) {
+			if (whichCoord < traversalLength - 1) {
 				whichCoord++; // increment global variable "whichCoord"
 
 				x2 = traversalArray[whichCoord][0];
@@ -188,11 +702,36 @@ public class GrandFinale {
 
 	}
 
+	private void improveFinalPath() // runs the anytime search for whatever is left of this tick's budget and swaps in
+									// a better final path at the start of a run so we never change course mid run
+	{
+		if (anytimeSearch.isFinished() == false)
+			anytimeSearch.improve(tickDeadline - System.nanoTime());
+
+		int[][] searchPath = anytimeSearch.getPath();
+		if (pollRun == 0 && searchPath != null && searchPath != adoptedPath
+				&& searchPath.length - 1 < pathLength(finalPath)) {
+			finalPath = MazeTree.losslessCompressionAlgorithm(Arrays.copyOf(searchPath, searchPath.length - 1),
+					targetX, targetY);
+			adoptedPath = searchPath;
+			System.out.println("Improved path found (bound " + anytimeSearch.getBound() + "): "
+					+ Arrays.deepToString(finalPath));
+		}
+	}
+
+	private int pathLength(int[][] path) // counts the steps needed to follow a (compressed) path from start to end
+	{
+		int steps = 0;
+		for (int i = 1; i < path.length; i++)
+			steps = steps + Math.abs(path[i][0] - path[i - 1][0]) + Math.abs(path[i][1] - path[i - 1][1]);
+		return steps;
+	}
+
 	private void pathFoundController(IRobot robot) // This method only runs after the robot's first run and tells the
 													// robot to follow the path set out for it in the finalPath array
 	{
-		int x1 = robot.getLocation().x; // coordinate variables
-		int y1 = robot.getLocation().y;
+		int x1 = robotX; // coordinate variables
+		int y1 = robotY;
 		int x2 = 0;
 		int y2 = 0;
 
@@ -215,106 +754,380 @@ public class GrandFinale {
 		robot.setHeading(attemptDirection); // sets the heading to that direction
 	}
 
-	private void queueNode(IRobot robot, int x1, int y1, int x2, int y2, double gCost) // method to add node information
-																						// and queue priority nodes
+	private void setMultipliers(int pos) // picks our multipliers depending on whether a node is in a corridor or
+											// junction
+	{
+		switch (pos) {
+			case 1:
+				node.setGCostMultiplier(1);
+				hMultiplier = Math.sqrt(2); // set multipliers back to default
+				break;
+			case 2:
+				node.setGCostMultiplier(0.01); // we do this in order for the robot to expand corridors more quickly as
+												// opposed to using a messier solution involving
+				hMultiplier = Math.sqrt(0.01); // set the multipliers really low for corridors
+		}
+	}
+
+	private void queueNode(int x1, int y1, int x2, int y2, double gCost, double lowestCost) // method to add node
+																							// information and queue
+																							// priority nodes
 	{
-		MazeTree nodeNew = new MazeTree(x1, y1, x2, y2); // declares a new MazeTree object variable
-		node.AddNode(nodeNew); // adds the new object to our hashmap
+		node.AddNode(x1, y1, x2, y2); // adds the new node straight to our hashmap without building a MazeTree object
 
-		double heuristic = absoluteMagnitude(x2, y2, robot.getTargetLocation().x, robot.getTargetLocation().y); // calculates
-																												// the
-																												// heuristic
-																												// estimate
-																												// to
-																												// our
-																												// target
-																												// from
-																												// the
-																												// current
-																												// node
-		PriorityNode priorityNodeNew = new PriorityNode(x2, y2, heuristic * hMultiplier + gCost); // queues up the
-																									// priority node
-																									// with values for
-																									// gCost and the
-																									// heuristic
-																									// estimate
-		priorityNode.addPriorityNode(priorityNodeNew); // adds the priority node
+		int goalX = targetX;
+		int goalY = targetY;
+		if (rejoinCells != null) // until we've joined up with the checkpoint's map we head back to where we left it
+		{
+			goalX = CoordinateMap.unpackX(rejoinCell);
+			goalY = CoordinateMap.unpackY(rejoinCell);
+		}
+		double heuristic = absoluteMagnitude(x2, y2, goalX, goalY); // calculates the heuristic estimate to our
+																	// target from the current node
+		priorityNode.addPriorityNode(x2, y2, Math.max(lowestCost, heuristic * hMultiplier + gCost)); // queues up the
+																										// priority node
+																										// with values
+																										// for gCost and
+																										// the heuristic
+																										// estimate
 	}
 
-	private void priorityNodeQueuer(IRobot robot, double gCost) // every time we expand on a node we check surrounding
-																// nodes and determine what position in the priority
-																// queue the nodes should be in
+	private void priorityNodeQueuer(IRobot robot, int x1, int y1, double gCost) // every time we expand on a node we
+																				// check surrounding nodes and determine
+																				// what position in the priority queue
+																				// the nodes should be in
 	{
-		int x1 = robot.getLocation().x;
-		int y1 = robot.getLocation().y;
+		expansions++;
+		double lowestCost = 0; // a child can't be cheaper than what we remembered for it when we forgot it
+		long forgotten = 0;
+		if (backedUp.containsKey(x1, y1)) // we've been here before but forgot what we found
+		{
+			reExpansions++;
+			lowestCost = Double.longBitsToDouble(backedUp.get(x1, y1, 0));
+			forgotten = forgottenChildren.get(x1, y1, 0);
+			backedUp.remove(x1, y1);
+			forgottenChildren.remove(x1, y1);
+		}
 
-		if (robot.look(lookHeading(robot, IRobot.NORTH)) != IRobot.BEENBEFORE
-				&& robot.look(lookHeading(robot, IRobot.NORTH)) != IRobot.WALL) // for every 4 squares surrounding the
-																				// robot we queue up priority nodes
-			queueNode(robot, x1, y1, x1, y1 - 1, gCost); // calls method to queue up priority node to the north of the
-															// robot
+		if (isQueueable(robot, x1, y1 - 1, (forgotten & 1) != 0)) // for every 4 squares surrounding the node we queue
+																	// up priority nodes as long as they are open and
+																	// nobody has been there before
+			queueNode(x1, y1, x1, y1 - 1, gCost, lowestCost); // calls method to queue up priority node to the north
+																// of the node
+
+		if (isQueueable(robot, x1 + 1, y1, (forgotten & 2) != 0))
+			queueNode(x1, y1, x1 + 1, y1, gCost, lowestCost); // calls method to queue up priority node to the east of
+																// the node
+
+		if (isQueueable(robot, x1, y1 + 1, (forgotten & 4) != 0))
+			queueNode(x1, y1, x1, y1 + 1, gCost, lowestCost); // calls method to queue up priority node to the south
+																// of the node
+
+		if (isQueueable(robot, x1 - 1, y1, (forgotten & 8) != 0))
+			queueNode(x1, y1, x1 - 1, y1, gCost, lowestCost); // calls method to queue up priority node to the west of
+																// the node
+
+		if (nodeBudget > 0) {
+			if (node.getChildCount(x1, y1) == 0) {
+				if (deadEndCount == deadEnds.length)
+					deadEnds = Arrays.copyOf(deadEnds, deadEndCount * 2);
+				deadEnds[deadEndCount++] = CoordinateMap.pack(x1, y1);
+			}
+			enforceNodeBudget();
+		}
+		peakNodes = Math.max(peakNodes, node.size());
+		if (rejoinCells != null && joinsRestoredMap(x1, y1))
+			requeueForTarget();
+	}
 
-		if (robot.look(lookHeading(robot, IRobot.EAST)) != IRobot.BEENBEFORE
-				&& robot.look(lookHeading(robot, IRobot.EAST)) != IRobot.WALL)
-			queueNode(robot, x1, y1, x1 + 1, y1, gCost); // calls method to queue up priority node to the east of the
-															// robot
+	private boolean joinsRestoredMap(int x1, int y1) // everything the checkpoint knew was found from the start, so
+														// once a node we've expanded touches any of it our tree is
+														// joined up with the start
+	{
+		if (rejoinCells.containsKey(x1, y1))
+			return true;
+		int[][] neighbours = { { x1, y1 - 1 }, { x1 + 1, y1 }, { x1, y1 + 1 }, { x1 - 1, y1 } };
+		for (int[] cell : neighbours) {
+			if (rejoinCells.containsKey(cell[0], cell[1]) && occupancy.get(cell[0], cell[1]) != OccupancyMap.WALL)
+				return true;
+		}
+		return false;
+	}
 
-		if (robot.look(lookHeading(robot, IRobot.SOUTH)) != IRobot.BEENBEFORE
-				&& robot.look(lookHeading(robot, IRobot.SOUTH)) != IRobot.WALL)
-			queueNode(robot, x1, y1, x1, y1 + 1, gCost); // calls method to queue up priority node to the south of the
-															// robot
+	private void requeueForTarget() // we've joined up with the checkpoint's map so the queue goes back to being
+									// ordered by how close each node gets us to the target
+	{
+		rejoinCells = null;
+		System.out.println("Joined up with the checkpoint's map again");
+		PriorityNode queue = new PriorityNode(0, 0, 0);
+		queue.resetQueueArray();
+		for (int i = 0; i < priorityNode.getQueueSize(); i++) {
+			int x1 = priorityNode.getQueueX(i);
+			int y1 = priorityNode.getQueueY(i);
+			queue.addPriorityNode(x1, y1,
+					node.gCostCalculator(x1, y1) + absoluteMagnitude(x1, y1, targetX, targetY) * hMultiplier);
+		}
+		priorityNode = queue;
+	}
 
-		if (robot.look(lookHeading(robot, IRobot.WEST)) != IRobot.BEENBEFORE
-				&& robot.look(lookHeading(robot, IRobot.WEST)) != IRobot.WALL)
-			queueNode(robot, x1, y1, x1 - 1, y1, gCost); // calls method to queue up priority node to the west of the
-															// robot
+	private boolean isQueueable(IRobot robot, int x1, int y1, boolean forgotten) // a cell is worth queueing if it's
+																					// open, nobody has been there
+																					// before and it isn't a dead end
+	{
+		if (forgotten) // a child we forgot comes back even if we've walked over it since, unless it turned out to be
+						// a dead end or something else picked it up
+			return occupancy.get(x1, y1) != OccupancyMap.WALL && node.containsNode(x1, y1) == false;
+		if (cellState(robot, x1, y1) != OccupancyMap.OPEN)
+			return false;
+		pruneDeadEnds(x1, y1);
+		return occupancy.get(x1, y1) == OccupancyMap.OPEN;
+	}
 
+	private boolean isDeadEnd(int x1, int y1) // a passage with walls on three sides that isn't the start, the target
+												// or the root of our tree can't be on the way anywhere
+	{
+		int state = occupancy.get(x1, y1);
+		if (state != OccupancyMap.OPEN && state != OccupancyMap.VISITED)
+			return false;
+		if ((x1 == targetX && y1 == targetY) || (x1 == startX && y1 == startY))
+			return false;
+		if (node != null && node.isRoot(x1, y1)) // a tree started after leaving a flow field can be rooted in a dead end
+			return false;
+		return occupancy.knowsNeighbours(x1, y1) && occupancy.countWalls(x1, y1) >= 3;
 	}
 
-	private int lookHeading(IRobot robot, int currentHeading) // turns absolute headings to relative headings
+	private void pruneDeadEnds(int x1, int y1) // fills in (x1, y1) as a wall if it's a dead end and then checks its
+												// neighbours, so a whole cul-de-sac gets filled in once we've seen
+												// the end of it
 	{
-		int whereToLook = IRobot.AHEAD + ((currentHeading - robot.getHeading() + 4) % 4);
+		int stackSize = 0;
+		pruneStack[stackSize++] = CoordinateMap.pack(x1, y1);
+		while (stackSize > 0) {
+			long cell = pruneStack[--stackSize];
+			int x = CoordinateMap.unpackX(cell);
+			int y = CoordinateMap.unpackY(cell);
+			if (isDeadEnd(x, y) == false)
+				continue;
+
+			occupancy.set(x, y, OccupancyMap.WALL);
+			prunedCells++;
+			int queued = priorityNode.indexOf(x, y); // pruned cells don't belong in our queue
+			if (queued != -1)
+				priorityNode.removeNodeAt(queued);
+			if (node.containsNode(x, y) && node.getChildCount(x, y) == 0 && node.isRoot(x, y) == false
+					&& (x != robotX || y != robotY)) // or on our tree if nothing hangs off them
+				node.removeNode(x, y);
+
+			if (stackSize + 4 > pruneStack.length)
+				pruneStack = Arrays.copyOf(pruneStack, pruneStack.length * 2);
+			pruneStack[stackSize++] = CoordinateMap.pack(x, y - 1);
+			pruneStack[stackSize++] = CoordinateMap.pack(x + 1, y);
+			pruneStack[stackSize++] = CoordinateMap.pack(x, y + 1);
+			pruneStack[stackSize++] = CoordinateMap.pack(x - 1, y);
+		}
+	}
 
-		return whereToLook; // returning our object that we are looking at
+	private void forgetDeadBranches() // an expanded node with no children and no place in the queue has nothing
+										// left to give us, so we drop it and then its parent if that's now the same
+	{
+		int kept = 0;
+		int i = 0;
+		for (; i < deadEndCount && node.size() > nodeBudget; i++) {
+			int x1 = CoordinateMap.unpackX(deadEnds[i]);
+			int y1 = CoordinateMap.unpackY(deadEnds[i]);
+			if (x1 == robotX && y1 == robotY) {
+				deadEnds[kept++] = deadEnds[i]; // we're standing on it so we'll come back to it later
+				continue;
+			}
+			while (node.containsNode(x1, y1) && node.getChildCount(x1, y1) == 0 && node.isRoot(x1, y1) == false
+					&& (x1 != robotX || y1 != robotY) && priorityNode.indexOf(x1, y1) == -1) {
+				long parent = node.removeNode(x1, y1);
+				x1 = CoordinateMap.unpackX(parent);
+				y1 = CoordinateMap.unpackY(parent);
+			}
+		}
+		int unread = deadEndCount - i; // we stopped as soon as we were back under budget so anything we didn't
+										// get to is still a dead end to come back to
+		System.arraycopy(deadEnds, i, deadEnds, kept, unread);
+		deadEndCount = kept + unread;
 	}
 
-	private int wallCounter(IRobot robot) // Rather than counting the number of passages we count the number of walls.
-											// It's essentially the same thing.
+	private void enforceNodeBudget() // forgets the worst leaves in our queue until the tree fits in our budget
 	{
-		int wallNumber = 0;
-		int whereLook = IRobot.AHEAD;
-		while (whereLook <= IRobot.LEFT) // while loop to check what's around the robot
+		forgetDeadBranches();
+
+		int index = priorityNode.getQueueSize() - 1;
+		double bestCost = priorityNode.getQueueCost(0);
+		while (node.size() > nodeBudget && index > 0 && priorityNode.getQueueCost(index) > bestCost) // we only
+																										// forget nodes
+																										// worse than
+																										// the one we're
+																										// heading for,
+																										// if there are
+																										// none left we
+																										// go over budget
 		{
-			if (robot.look(whereLook) == IRobot.WALL) // if we are looking at a wall then we increment our wallNumber
-														// variable by one
+			int x1 = priorityNode.getQueueX(index);
+			int y1 = priorityNode.getQueueY(index);
+			if (node.getChildCount(x1, y1) == 0 && node.isRoot(x1, y1) == false && (x1 != robotX || y1 != robotY)
+					&& node.getParent(x1, y1) != CoordinateMap.pack(robotX, robotY))
+				// only leaves can be forgotten, and never the one we're standing on as our next path starts there.
+				// Nor one hanging off it, we'd have to expand our own cell again straight away and that brings the
+				// leaf straight back
 			{
-				wallNumber++;
+				double cost = priorityNode.getQueueCost(index);
+				priorityNode.removeNodeAt(index);
+				long parent = node.removeNode(x1, y1);
+				int parentX = CoordinateMap.unpackX(parent);
+				int parentY = CoordinateMap.unpackY(parent);
+				long direction = y1 < parentY ? 1 : x1 > parentX ? 2 : y1 > parentY ? 4 : 8;
+				forgottenChildren.put(parentX, parentY, forgottenChildren.get(parentX, parentY, 0) | direction);
+
+				double remembered = Double.longBitsToDouble(backedUp.get(parentX, parentY,
+						Double.doubleToLongBits(Double.POSITIVE_INFINITY)));
+				cost = Math.min(cost, remembered); // the parent remembers the cheapest child it has forgotten
+				backedUp.put(parentX, parentY, Double.doubleToLongBits(cost));
+				int queued = priorityNode.indexOf(parentX, parentY);
+				if (queued != -1 && priorityNode.getQueueCost(queued) > cost)
+					priorityNode.removeNodeAt(queued);
+				priorityNode.addPriorityNode(parentX, parentY, cost); // so it gets expanded again when that cost is
+																		// the best one left
+				index = priorityNode.getQueueSize(); // the parent may have landed anywhere so we start from the back
 			}
-			whereLook++; // change which direction we are looking
+			index--;
 		}
-		if (wallNumber == 0)
-			wallNumber++; // junctions are the same as crossroads so we don't need to account for a fourth
-							// state
+	}
+
+	private void expandKnownNodes(IRobot robot) // if we already know what's in all four cells around the next node in
+												// our queue then walking there tells us nothing new, so we expand it
+												// from our occupancy map and move on to the next one
+	{
+		while (priorityNode.getQueueSize() > 1 && System.nanoTime() < tickDeadline) // we stop once the tick has used
+																					// up its planning budget, the robot
+																					// just walks to the node instead
+		{
+			int x1 = priorityNode.getHeadX();
+			int y1 = priorityNode.getHeadY();
+			if (occupancy.knowsNeighbours(x1, y1) == false || Math.abs(x1 - targetX) + Math.abs(y1 - targetY) <= 1)
+				break; // the robot has to go there itself, either to look around or to find the target
+			pruneDeadEnds(x1, y1);
+			if (occupancy.get(x1, y1) == OccupancyMap.WALL)
+				continue; // it was a dead end so it's already gone from the queue
+
+			priorityNode.removeTraversedNode();
+			occupancy.set(x1, y1, OccupancyMap.VISITED);
+			setMultipliers(occupancy.countWalls(x1, y1));
+			priorityNodeQueuer(robot, x1, y1, node.gCostCalculator(x1, y1));
+		}
+	}
 
-		return wallNumber; // return the number of walls we counted
+	private int cellState(IRobot robot, int x1, int y1) // checks our occupancy map first and only looks at the cell
+														// if we've never seen it and it's next to the robot
+	{
+		int state = occupancy.get(x1, y1);
+		if (state == OccupancyMap.UNKNOWN && Math.abs(x1 - robotX) + Math.abs(y1 - robotY) == 1) {
+			int heading = IRobot.NORTH; // works out which way the cell is from the robot
+			if (x1 > robotX)
+				heading = IRobot.EAST;
+			else if (y1 > robotY)
+				heading = IRobot.SOUTH;
+			else if (x1 < robotX)
+				heading = IRobot.WEST;
+
+			int lookResult = robot.look(lookHeading(robot, heading));
+			lookCount++;
+			if (lookResult == IRobot.WALL)
+				state = OccupancyMap.WALL;
+			else // a BEENBEFORE we didn't record ourselves means we were restarted since and lost that part of our
+					// search, so it's just as open as a passage
+				state = OccupancyMap.OPEN;
+			occupancy.set(x1, y1, state);
+		}
+		return state;
+	}
+
+	private int lookHeading(IRobot robot, int currentHeading) // turns absolute headings to relative headings
+	{
+		int whereToLook = IRobot.AHEAD + ((currentHeading - robot.getHeading() + 4) % 4);
+
+		return whereToLook; // returning our object that we are looking at
+	}
+
+	private int wallCounter(IRobot robot, int x1, int y1) // Rather than counting the number of passages we count the
+															// number of walls. It's essentially the same thing.
+	{
+		cellState(robot, x1, y1 - 1); // make sure we've sensed all four cells around the robot
+		cellState(robot, x1 + 1, y1);
+		cellState(robot, x1, y1 + 1);
+		cellState(robot, x1 - 1, y1);
+
+		return occupancy.countWalls(x1, y1); // return the number of walls we counted
 	}
 
 	private void checkDone(IRobot robot) // when the robot is next to the target we do the following:
 	{
 		whichCoord = 0; // reset our "whichCoord" coordinate selector variable
-		int x1 = robot.getLocation().x; // gets the location of the robot and the target
-		int y1 = robot.getLocation().y;
-		int x2 = robot.getTargetLocation().x;
-		int y2 = robot.getTargetLocation().y;
-		int targetX = node.returnCoordinateArray()[0].getX();
-		int targetY = node.returnCoordinateArray()[0].getY();
-		finalPath = node.createTraverseArray(targetX, targetY, x1, y1); // calls to create a path from the root node to
-																		// the target location
-		finalPath = node.losslessCompressionAlgorithm(finalPath, x2, y2); // runs the lossless compression algorithm to
-																			// reduce the final path size
+		int x1 = robotX; // gets the location of the robot and the target
+		int y1 = robotY;
+		int x2 = targetX;
+		int y2 = targetY;
+		boolean treeFromStart = exploring && node.getRootX() == startX && node.getRootY() == startY
+				&& node.containsNode(x1, y1); // a flow field can take us off our tree or start it somewhere else
+		finalPath = treeFromStart ? node.createTraverseArray(startX, startY, x1, y1) : null; // calls to create a path
+																								// from the root node to
+																								// the target location
+		long solveDeadline = System.nanoTime() + solveBudgetNanos; // getting the map ready comes out of the budget
+		OccupancyMap plannerMap = occupancy.copy(); // we only plan over cells we know about, so any passage that can't
+													// lead anywhere else is filled in before we start
+		int filledCells = plannerMap.fillDeadEnds(startX, startY, x2, y2);
+		int[][] searchPath;
+		int plannerExpansions;
+		if (bitboardMode) {
+			anytimeSearch = null; // the breadth first search always finishes with the shortest path in one go
+			bitboardSearch = new BitboardSearch(plannerMap, startX, startY, x2, y2);
+			searchPath = bitboardSearch.getPath();
+			plannerExpansions = bitboardSearch.getCellsReached();
+		} else {
+			anytimeSearch = new AnytimeSearch(plannerMap, startX, startY, x2, y2, initialEpsilon);
+			anytimeSearch.improve(solveDeadline - System.nanoTime()); // our tree path might not be the shortest one
+																		// through the cells we've seen so we search
+																		// them again for as long as we're allowed
+			while (finalPath == null && anytimeSearch.getPath() == null && anytimeSearch.isFinished() == false)
+				anytimeSearch.improve(solveBudgetNanos); // if a flow field brought us part of the way our tree
+															// doesn't start at the start so we need at least one
+															// search path
+			searchPath = anytimeSearch.getPath();
+			plannerExpansions = anytimeSearch.getExpansions();
+		}
+		if (searchPath != null && (finalPath == null || searchPath.length - 1 < finalPath.length)) {
+			finalPath = Arrays.copyOf(searchPath, searchPath.length - 1); // the target gets added back on below
+			adoptedPath = searchPath;
+		}
+		if (finalPath == null) // nothing we know joins the start up with the target, so the best we can do is head
+								// straight for it from the start
+		{
+			System.out.println("No path from the start to the target in what we've seen");
+			finalPath = new int[][] { { startX, startY } };
+		}
+		finalPath = MazeTree.losslessCompressionAlgorithm(finalPath, x2, y2); // runs the lossless compression
+																				// algorithm to reduce the final path
+																				// size. It doesn't need a tree, which
+																				// is just as well as a flow field can
+																				// take us all the way without one
 		System.out.println("Optimal path found: " + Arrays.deepToString(finalPath)); // outputs the nodes the robot has
 																						// to go through in order to
 																						// complete the maze
+		System.out.println("Cells looked at: " + lookCount); // how many times we had to sense the maze this solve
+		System.out.println("Suboptimality bound: " + getSuboptimalityBound());
+		if (exploring)
+			System.out.println("Peak resident nodes: " + peakNodes + ", re-expansions: " + reExpansions);
+		System.out.println("Expansions: " + expansions + ", dead ends pruned: " + prunedCells + ", filled before planning: "
+				+ filledCells + ", planner expansions: " + plannerExpansions);
+		if (flowFieldMode)
+			FlowField.publish(occupancy, x2, y2); // share the way to this target with every other robot
+		if (checkpoint != null)
+			checkpoint.finish(); // there's nothing left to resume once we've found the target
+		unverified = null;
 
 		int attemptDirection = createDirectionArray(robot, x1, y1, x2, y2); // home in on the target location
 		robot.setHeading(attemptDirection); // set the direction
@@ -336,33 +1149,34 @@ public class GrandFinale {
 																					// coordinates given the robots
 																					// current position
 	{
-		double absoluteEast = absoluteMagnitude(x1 + 1, y1, x2, y2); // check euclidean distance east
-		double absoluteWest = absoluteMagnitude(x1 - 1, y1, x2, y2); // check euclidean distance west
-		double absoluteNorth = absoluteMagnitude(x1, y1 - 1, x2, y2); // check euclidean distance north
-		double absoluteSouth = absoluteMagnitude(x1, y1 + 1, x2, y2); // check euclidean distance south
-		// the absolute mangnitude between two points in 2D space is sqrt(Xbar^2 +
-		// Ybar^2)
-		// System.out.println("South" + absolutesouth);
-		double[] absoluteArray = { absoluteNorth, absoluteEast, absoluteWest, absoluteSouth }; // sorts the array from
-																								// smallest to largest
-																								// magnitude from the
-																								// target
-		Arrays.sort(absoluteArray); // sorts the array from closest calculated direction heuristic to the furthest
-		// System.out.println("Shortest distance: " + absoluteArray[0]);
-		int attemptDirection = 0;
-		if (absoluteNorth == absoluteArray[0]) // depending on which shortest euclidean distance matches to which
-												// associated directions distance we return back the direction that will
-												// bring us closest to the target coordinates
-			attemptDirection = IRobot.NORTH;
-		else if (absoluteEast == absoluteArray[0])
+		int squaredNorth = squaredMagnitude(x1, y1 - 1, x2, y2); // the squared euclidean distance ranks the four
+																	// directions the same way the real distance does
+		int squaredEast = squaredMagnitude(x1 + 1, y1, x2, y2); // so we can skip the square roots and the array sort
+		int squaredWest = squaredMagnitude(x1 - 1, y1, x2, y2);
+		int squaredSouth = squaredMagnitude(x1, y1 + 1, x2, y2);
+
+		int attemptDirection = IRobot.NORTH; // ties go to the first direction in the order north, east, west, south
+		int shortest = squaredNorth;
+		if (squaredEast < shortest) {
 			attemptDirection = IRobot.EAST;
-		else if (absoluteWest == absoluteArray[0])
+			shortest = squaredEast;
+		}
+		if (squaredWest < shortest) {
 			attemptDirection = IRobot.WEST;
-		else if (absoluteSouth == absoluteArray[0])
+			shortest = squaredWest;
+		}
+		if (squaredSouth < shortest)
 			attemptDirection = IRobot.SOUTH;
 
 		return attemptDirection; // returns the best direction (to reach a target)
 	}
+
+	private int squaredMagnitude(int x1, int y1, int x2, int y2) // the euclidean distance without the square root
+	{
+		int xdif = x2 - x1;
+		int ydif = y2 - y1;
+		return xdif * xdif + ydif * ydif;
+	}
 }
 
 class MazeTree // this class is used mainly for the storage of paths from any node to any other
@@ -387,16 +1201,41 @@ class MazeTree // this class is used mainly for the storage of paths from any no
 	private int y;
 	private double gCostMultiplier; // this is a static variable to keep our gCost multiplier the same but we can
 									// change it if we want to to change the behaviour of our search algorithm
-	private MazeTree[] coordinateArray;
-	private HashMap<List<Integer>, List<Integer>> fasterParent; // hashmap containing information about the nodes (x, y)
-																// coordinate and their associated parent node
+	private int rootX; // the (x, y) coordinate of our root node
+	private int rootY;
+	private CoordinateMap fasterParent; // hashmap containing information about the nodes (x, y) coordinate and their
+										// associated parent node, both packed into longs so a lookup never allocates
+	private CoordinateMap nodeDepth; // how many steps each node is from the root, so working out a gCost doesn't
+										// mean walking all the way back to the root every time
+	private CoordinateMap childCount; // how many children each node has on the tree, leaves have none
+
+	private static final long ROOT_PARENT = CoordinateMap.pack(5000077, 5000077); // the parent of our root node
+	static final long REMOVED = CoordinateMap.EMPTY; // stands in for the parent when the journal records a removal
+
+	private long[] journal; // every node added or removed since our last checkpoint as (node, parent) pairs, null
+							// unless we're checkpointing
+	private int journalLength;
+
+	private CoordinateMap dupeCheck; // scratch space for fillTraverseArray which is reused on every call. Rather
+										// than clearing the map we stamp the coordinates we visit with the number
+										// of the call
+	private long traverseStamp;
+	private int[] originXs = new int[16]; // the two paths from our origin and target towards the root
+	private int[] originYs = new int[16];
+	private int[] targetXs = new int[16];
+	private int[] targetYs = new int[16];
+	private int[][] traverseArray = new int[0][2]; // the path handed back by fillTraverseArray
 
 	public void setGCostMultiplier(double gCostInput) {
 		gCostMultiplier = gCostInput; // sets our gCostMultiplier accordinagly
 	}
 
-	public MazeTree[] returnCoordinateArray() {
-		return coordinateArray; // return the array containing the coordinate of our root
+	public int getRootX() {
+		return rootX; // returns the X coordinate of our root
+	}
+
+	public int getRootY() {
+		return rootY; // returns the Y coordinate of our root
 	}
 
 	public int getParentY() {
@@ -415,260 +1254,261 @@ class MazeTree // this class is used mainly for the storage of paths from any no
 		return x; // returns a nodes X coordinate from a MazeTree object
 	}
 
-	public void resetCoordinateArray() // calls to reset our hashmap and the coordinate array
+	public void resetCoordinateArray() // calls to reset our hashmap and the root coordinate
 	{
-		coordinateArray = new MazeTree[0];
-		fasterParent = new HashMap<List<Integer>, List<Integer>>();
+		rootX = 0;
+		rootY = 0;
+		fasterParent = new CoordinateMap();
+		nodeDepth = new CoordinateMap();
+		childCount = new CoordinateMap();
+		dupeCheck = new CoordinateMap();
+		traverseStamp = 0;
+	}
+
+	public void startJournal() {
+		journal = new long[64];
+		journalLength = 0;
+	}
+
+	public long[] getJournal() {
+		return journal;
+	}
+
+	public int getJournalLength() {
+		return journalLength;
+	}
+
+	public void clearJournal() {
+		journalLength = 0;
+	}
+
+	private void record(long child, long parent) {
+		if (journalLength + 2 > journal.length)
+			journal = Arrays.copyOf(journal, journal.length * 2);
+		journal[journalLength++] = child;
+		journal[journalLength++] = parent;
 	}
 
 	public void AddNode(MazeTree node) // method to add a node to our hashmap
 	{
+		AddNode(node.getParentX(), node.getParentY(), node.getX(), node.getY());
+	}
 
-		List<Integer> coord = new ArrayList<Integer>(); // declare an array list that will contain the (x, y) coordinate
-														// of the node
-		List<Integer> parentCoord = new ArrayList<Integer>(); // declare an array list that will contain the (x, y)
-																// coordinate of the parent of that node
-		coord.add(node.getX()); // adds the (x, y) coordinate to our array list object
-		coord.add(node.getY());
-		parentCoord.add(node.getParentX()); // adds the (x, y) coordinate of our parent node to our array list object
-		parentCoord.add(node.getParentY());
-		if (fasterParent.containsKey(coord) != true) // we check if the key for the array list containing the (x, y)
-														// coordinate of the current node is in the hashmap already
+	public void AddNode(int parentX, int parentY, int x, int y) // adds a node to our hashmap without needing a
+																// MazeTree object to carry the values
+	{
+		if (fasterParent.size() == 0) // this is just to store the root node
 		{
-			fasterParent.put(coord, parentCoord);
+			rootX = x;
+			rootY = y;
 		}
 
-		if (coordinateArray.length == 0) // this is just to store the root node
+		if (fasterParent.containsKey(x, y) == false) // we only keep the first parent we were given for a coordinate
 		{
-			MazeTree[] newArray = new MazeTree[1];
-			newArray[0] = node;
-			coordinateArray = newArray;
+			fasterParent.put(x, y, CoordinateMap.pack(parentX, parentY));
+			nodeDepth.put(x, y, parentX == 5000077 ? 0 : nodeDepth.get(parentX, parentY, 0) + 1);
+			if (parentX != 5000077)
+				childCount.put(parentX, parentY, childCount.get(parentX, parentY, 0) + 1);
+			if (journal != null)
+				record(CoordinateMap.pack(x, y), CoordinateMap.pack(parentX, parentY));
 		}
-
 	}
 
-	private int[] getParent(int x1, int y1) // method to get the parent coordinates of the parent node
+	public long removeNode(int x, int y) // takes a leaf off our tree and returns its packed parent coordinate
 	{
-		List<Integer> coord = new ArrayList<Integer>(); // declares a new array list that will contain the (x, y)
-														// coordinate of the hash key we're looking for
-
-		coord.add(x1);
-		coord.add(y1);
-		int[] parentArray = new int[2]; // declares an array that we will pass back containingthe parent node
-										// coordinates
-		int arrayLength = coordinateArray.length;
+		long parent = getParent(x, y);
+		fasterParent.remove(x, y);
+		nodeDepth.remove(x, y);
+		childCount.remove(x, y);
+		dupeCheck.remove(x, y); // otherwise its stamp would hold on to a slot for as long as the tree lives
+		int parentX = CoordinateMap.unpackX(parent);
+		int parentY = CoordinateMap.unpackY(parent);
+		if (parent != ROOT_PARENT)
+			childCount.put(parentX, parentY, childCount.get(parentX, parentY, 1) - 1);
+		if (journal != null)
+			record(CoordinateMap.pack(x, y), REMOVED);
+		return parent;
+	}
 
-		if (fasterParent.get(coord) != null) // we check if the coordinate we're trying to access with our hash value is
-												// empty or not
-		{
-			parentArray[0] = fasterParent.get(coord).get(0); // this may seem confusing since the .get() method is the
-																// same for array lists and hashmaps but there's no
-																// avoiding it
-			parentArray[1] = fasterParent.get(coord).get(1); // so firstly we are getting the hashmap value associated
-																// with our given hash key (the array list object) and
-																// afterwards we get the (x, y) coordinate from the
-																// array list
-		}
+	public int getChildCount(int x, int y) {
+		return (int) childCount.get(x, y, 0);
+	}
 
-		return parentArray; // return an array containing the parent coordinate of any given node
+	public boolean isRoot(int x, int y) {
+		return x == rootX && y == rootY;
 	}
 
-	private int[][] addArrayToArray(int arr[][], int arrAdd[]) // a method to add an array to a 2D array
+	public int size() // how many nodes are on our tree
 	{
-		int oldArrayLength = arr.length;
-		int tempArr[][] = new int[oldArrayLength + 1][2]; // declares a new 2D array with an extra space for our array
-															// we're adding
+		return fasterParent.size();
+	}
 
-		for (int i7 = 0; i7 < oldArrayLength; i7++) // duplicates our 2D array over to a temporary array
-			tempArr[i7] = arr[i7];
+	public boolean containsNode(int x1, int y1) // checks if a coordinate is on our tree
+	{
+		return fasterParent.containsKey(x1, y1);
+	}
 
-		tempArr[oldArrayLength] = arrAdd; // sets the last space in the array as the array we're adding
-		return tempArr;
+	public long getParent(int x1, int y1) // method to get the packed coordinates of the parent node, unknown nodes
+											// are treated as if they hang off the root
+	{
+		return fasterParent.get(x1, y1, ROOT_PARENT);
 	}
 
 	public double gCostCalculator(int x1, int y1) // calculates the gCost value for any given node given any (x, y)
 													// coordinate
 	{
-		double gCost = 0;
-		int startX = x1; // declares the starting x, y coordinate and the parent x, y coordinate
-		int startY = y1;
-		int parentX = 0;
-		int parentY = 0;
-		int i6 = 0;
-
-		while (i6 < fasterParent.size() && parentX != 5000077) // while our count variable is less than the hashmap size
-																// and the current node we are looking at is not the
-																// root node
-		{
-			parentX = getParent(startX, startY)[0]; // gets the parent (x, y) coordinate of our node
-			parentY = getParent(startX, startY)[1];
-
-			if (parentX != 5000077)
-				gCost = gCost + java.lang.Math.abs(parentX - startX) + java.lang.Math.abs(parentY - startY); // calculates
-																												// the
-																												// distance
-																												// between
-																												// each
-																												// node
-																												// and
-																												// adds
-																												// it to
-																												// oue
-																												// total
-																												// gCost
-
-			startX = parentX; // sets our starting node as the parent coordinate
-			startY = parentY;
-			i6++; // increments the i6 count variable
-		}
+		double gCost = nodeDepth.get(x1, y1, 0); // every step between a node and its parent costs 1 so the distance
+													// back to the root is just the depth we stored when adding it
 
 		gCost = (gCost * gCostMultiplier); // scales our final gCost value with our gCost multiplier
 
 		return gCost; // return gCost
 	}
 
-	public int[][] createTraverseArray(int x1, int y1, int x2, int y2) // this method is a bit of a doozy but what it
-																		// essentially does is construct a path from any
-																		// node on our tree to any other node on our
-																		// tree
+	public int[][] createTraverseArray(int x1, int y1, int x2, int y2) // builds the same path as fillTraverseArray
+																		// but hands back a copy that the caller owns
 	{
-		// System.out.println(" x1 " + x1 + " y1 " + y1);
-		// System.out.println(" x2 " + x2 + " y2 " + y2);
-		int[][] traverseArray = new int[0][2]; // we declare three arrays
-		int[][] originArray = new int[0][2]; // the traverse array is our final output array
-		int[][] targetArray = new int[0][2]; // the other two are arrays we construct from a set of coordinates to
-												// (possibly) the root node
+		int length = fillTraverseArray(x1, y1, x2, y2);
+		int[][] path = new int[length][2];
+		for (int i = 0; i < length; i++) {
+			path[i][0] = traverseArray[i][0];
+			path[i][1] = traverseArray[i][1];
+		}
+		return path;
+	}
 
-		int originX1 = x1; // this declares our starting node as the x, y coordinate pertaining to our
-							// start
-		int originY1 = y1;
-		int originParentX; // for the parent of our current node
-		int originParentY;
+	public int[][] getTraverseArray() // the scratch array filled by fillTraverseArray, only the first rows returned
+										// by that call belong to the path
+	{
+		return traverseArray;
+	}
 
+	public int fillTraverseArray(int x1, int y1, int x2, int y2) // this method is a bit of a doozy but what it
+																	// essentially does is construct a path from any
+																	// node on our tree to any other node on our tree
+	{
+		// We walk up from both the origin and the target towards the root one step at a
+		// time and stop at the first coordinate that one walk finds the other has
+		// already stamped. That's our common coordinate. All of the arrays here are
+		// reused between calls so once they are big enough for the tree nothing new is
+		// allocated.
+		traverseStamp++;
+
+		int originLength = 0;
+		int targetLength = 0;
+		int originX1 = x1; // this declares our starting node as the x, y coordinate pertaining to our start
+		int originY1 = y1;
 		int targetX1 = x2; // this declares the x, y coordinate pertaining to our end node
 		int targetY1 = y2;
-		int targetParentX; // for the parent of our target node
-		int targetParentY;
+		boolean originDone = false; // a walk is done once it has reached the root
+		boolean targetDone = false;
 
 		int commonX = 0;
 		int commonY = 0;
+		boolean commonCoordinateFound = false;
 
-		boolean commonCoordinateFound = false; // boolean true/false variable to see if we have found the common
-												// coordinate and to prematurely stop our loops once we have identified
-												// the common coordinate on our paths
-		int i5 = 0;
-
-		HashMap<List<Integer>, Integer> dupeCheck = new HashMap<List<Integer>, Integer>();
+		while (commonCoordinateFound == false && (originDone == false || targetDone == false)) {
+			if (originDone == false) {
+				if (originLength == originXs.length) {
+					originXs = Arrays.copyOf(originXs, originLength * 2);
+					originYs = Arrays.copyOf(originYs, originLength * 2);
+				}
+				originXs[originLength] = originX1;
+				originYs[originLength] = originY1;
+				originLength++;
 
-		while (commonCoordinateFound == false & i5 < fasterParent.size()) // while our counter is less than the hashmap
-																			// size and we have not yet found the common
-																			// coordinate do the following:
-		{
-			int[] originSingleCoordinateArray = new int[2]; // declare an array that will contain the (x, y) coordinate
-															// of the origin coordinate we are comparing to the rest of
-															// the target array
-			int[] targetSingleCoordinateArray = new int[2]; // declare an array that will contain the (x, y) coordinate
-															// of the target coordinate we are comparing to the rest of
-															// the origin array
-
-			originSingleCoordinateArray[0] = originX1;
-			originSingleCoordinateArray[1] = originY1;
-
-			targetSingleCoordinateArray[0] = targetX1;
-			targetSingleCoordinateArray[1] = targetY1;
-
-			List<Integer> coord1 = new ArrayList<Integer>();
-			List<Integer> coord2 = new ArrayList<Integer>();
-
-			if (originSingleCoordinateArray[0] != 0 && originSingleCoordinateArray[1] != 0) // we add the (x, y)
-																							// coordinate to our origin
-																							// array or target array as
-																							// long as they are not
-																							// blank (equal to 0)
-			{
-				coord1.add(originX1);
-				coord1.add(originY1);
-				if (dupeCheck.containsKey(coord1)) {
+				if (dupeCheck.get(originX1, originY1, 0) == traverseStamp) {
 					commonCoordinateFound = true;
 					commonX = originX1;
 					commonY = originY1;
 				} else {
-					dupeCheck.put(coord1, 0);
+					dupeCheck.put(originX1, originY1, traverseStamp);
+					long parent = getParent(originX1, originY1); // gets the parent of our node from the origin path
+					originDone = parent == ROOT_PARENT;
+					originX1 = CoordinateMap.unpackX(parent);
+					originY1 = CoordinateMap.unpackY(parent);
 				}
-				originArray = addArrayToArray(originArray, originSingleCoordinateArray);
 			}
-			if (targetSingleCoordinateArray[0] != 0 && targetSingleCoordinateArray[1] != 0) {
-				coord2.add(targetX1);
-				coord2.add(targetY1);
-				if (dupeCheck.containsKey(coord2)) {
+
+			if (commonCoordinateFound == false && targetDone == false) {
+				if (targetLength == targetXs.length) {
+					targetXs = Arrays.copyOf(targetXs, targetLength * 2);
+					targetYs = Arrays.copyOf(targetYs, targetLength * 2);
+				}
+				targetXs[targetLength] = targetX1;
+				targetYs[targetLength] = targetY1;
+				targetLength++;
+
+				if (dupeCheck.get(targetX1, targetY1, 0) == traverseStamp) {
 					commonCoordinateFound = true;
 					commonX = targetX1;
 					commonY = targetY1;
 				} else {
-					dupeCheck.put(coord2, 0);
+					dupeCheck.put(targetX1, targetY1, traverseStamp);
+					long parent = getParent(targetX1, targetY1); // gets the parent of our node in the target path
+					targetDone = parent == ROOT_PARENT;
+					targetX1 = CoordinateMap.unpackX(parent);
+					targetY1 = CoordinateMap.unpackY(parent);
 				}
-				targetArray = addArrayToArray(targetArray, targetSingleCoordinateArray);
 			}
+		}
 
-			originParentX = getParent(originX1, originY1)[0]; // gets the parent of our node from the origin array
-			originParentY = getParent(originX1, originY1)[1];
-
-			targetParentX = getParent(targetX1, targetY1)[0]; // gets the parent of our node in the target array
-			targetParentY = getParent(targetX1, targetY1)[1];
-
-			originX1 = originParentX; // set our new origin value as its origin parent value
-			originY1 = originParentY;
-
-			targetX1 = targetParentX; // set our new target value as its parent target value
-			targetY1 = targetParentY;
-			i5++; // increment i5
+		int pathLength = 0;
+		for (int i35 = 0; i35 < originLength; i35++) // we add elements starting from the origin coordinate up to the
+														// common coordinate to our final array
+		{
+			pathLength = addToTraverseArray(pathLength, originXs[i35], originYs[i35]);
+			if (originXs[i35] == commonX && originYs[i35] == commonY)
+				break;
 		}
 
-		int i35 = 0;
-		int i25 = targetArray.length - 1;
+		int commonPosition = 0; // then we find the common coordinate on the target path and work backwards to the
+								// first element which is the last node we want to reach
+		while (commonPosition < targetLength
+				&& (targetXs[commonPosition] != commonX || targetYs[commonPosition] != commonY))
+			commonPosition++;
+		for (int i25 = commonPosition - 1; i25 >= 0; i25--)
+			pathLength = addToTraverseArray(pathLength, targetXs[i25], targetYs[i25]);
 
-		boolean commonPositionOrigin = false;
-		boolean commonPositionTarget = false;
+		return pathLength; // the number of rows in our traverse array which make up the path in order of
+							// which nodes the robot will come across first
+	}
 
-		while (commonPositionOrigin == false) // This is where we construct our traverse array out of two arrays which
-												// are our origin and target arrays
-		{
-			if (i35 < originArray.length) // how this essentially works is that we add elements starting from the origin
-											// coordinate to the common coordinate to our final array
-				traverseArray = addArrayToArray(traverseArray, originArray[i35]);
-			if (originArray[i35][0] == commonX && originArray[i35][1] == commonY)
-				commonPositionOrigin = true;
-			i35++;
-		}
-		while (i25 >= 0) // then once we reach our common coordinate in the origin array we then start
-							// from the common coordinate in our target array
-		{
+	private int addToTraverseArray(int pathLength, int x1, int y1) // writes a coordinate to the end of our path,
+																	// growing the scratch array if we run out of room
+	{
+		if (pathLength == traverseArray.length) {
+			int[][] newArray = new int[Math.max(16, pathLength * 2)][];
+			for (int i = 0; i < newArray.length; i++)
+				newArray[i] = i < pathLength ? traverseArray[i] : new int[2];
+			traverseArray = newArray;
+		}
+		traverseArray[pathLength][0] = x1;
+		traverseArray[pathLength][1] = y1;
+		return pathLength + 1;
+	}
 
-			if (commonPositionTarget == true)
-				traverseArray = addArrayToArray(traverseArray, targetArray[i25]); // we then work backwards to the first
-																					// element in our target array which
-																					// is the last node we want to reach
-			if (targetArray[i25][0] == commonX && targetArray[i25][1] == commonY)
-				commonPositionTarget = true;
+	private static int[][] addArrayToArray(int arr[][], int arrAdd[]) // a method to add an array to a 2D array
+	{
+		int oldArrayLength = arr.length;
+		int tempArr[][] = new int[oldArrayLength + 1][2]; // declares a new 2D array with an extra space for our array
+															// we're adding
 
-			i25--;
-		}
-		// System.out.println(commonX);
-		// System.out.println(commonY);
-		// System.out.println(Arrays.deepToString(originArray));
-		// System.out.println(Arrays.deepToString(targetArray));
-		// System.out.println(Arrays.deepToString(traverseArray));
+		for (int i7 = 0; i7 < oldArrayLength; i7++) // duplicates our 2D array over to a temporary array
+			tempArr[i7] = arr[i7];
 
-		return traverseArray; // return our 2D array which contains the path in order of which nodes the robot
-								// will come across first
+		tempArr[oldArrayLength] = arrAdd; // sets the last space in the array as the array we're adding
+		return tempArr;
 	}
 
-	public int[][] losslessCompressionAlgorithm(int[][] traverseArray, int x1, int y1) // this is a lossless compression
-																						// algorithm that reduces the
-																						// number of elements in our
-																						// traverse array so that our
-																						// final path is both optimal
-																						// and takes up less memory
+	public static int[][] losslessCompressionAlgorithm(int[][] traverseArray, int x1, int y1) // this is a lossless
+																								// compression algorithm
+																								// that reduces the
+																								// number of elements in
+																								// our traverse array so
+																								// that our final path
+																								// is both optimal and
+																								// takes up less memory
 	{ // it compresses the 2D array by identifying consecutive sequences of multiple X
 		// or Y values all appearing in a row and coalescing them into one large step
 		int[][] compressionArray = traverseArray; // we declare a new array to briefly store our old array
@@ -740,7 +1580,10 @@ class PriorityNode // This class is defined by the fact that it's used to store
 	private int x;
 	private int y;
 	private double nodeCost;
-	private PriorityNode[] priorityQueue; // declares the priority queue array for our class
+	private int[] queueX; // the priority queue is kept as three parallel arrays sorted by node cost so adding and
+	private int[] queueY; // removing nodes just shuffles numbers around instead of building new PriorityNode arrays
+	private double[] queueCost;
+	private int queueSize;
 
 	public int getY() // some getter functions to extract information about our priority nodes
 	{
@@ -755,91 +1598,1301 @@ class PriorityNode // This class is defined by the fact that it's used to store
 		return nodeCost;
 	}
 
-	public PriorityNode[] getPriorityQueue() // returns our priority queue so we can extract the next priority node
+	public int getHeadX() // returns the X coordinate of the next priority node in our queue
 	{
-		return priorityQueue;
+		if (queueSize == 0) // the arrays never shrink so queueX[0] could be a node we took out long ago
+			throw new IllegalStateException("the priority queue is empty");
+		return queueX[0];
 	}
 
-	public void resetQueueArray() // method to reset the priority queue on new runs of new mazes
+	public int getHeadY() // returns the Y coordinate of the next priority node in our queue
 	{
-		priorityQueue = new PriorityNode[0];
+		if (queueSize == 0)
+			throw new IllegalStateException("the priority queue is empty");
+		return queueY[0];
 	}
 
-	public void addPriorityNode(PriorityNode priorityNode) // this method is used to queue up priority nodes based on
-															// their node cost
-	{ // I realise that there is already a priority queue library with a priority
-		// queue object in java but I wanted the queue to store extra information (i.e I
-		// wanted a collection of priority node objects as opposed to a bunch of ordered
-		// nodeCost doubles)
-		int arrayLength = (priorityQueue.length);
-		PriorityNode[] newArray = new PriorityNode[arrayLength + 1]; // declare a new array that is one size larger than
-																		// the old one
-		int positionCounter = 0;
+	public int getQueueSize() {
+		return queueSize;
+	}
 
+	public int getQueueX(int index) // the coordinate and node cost of any node in the queue, 0 is the front
+	{
+		return queueX[index];
+	}
+
+	public int getQueueY(int index) {
+		return queueY[index];
+	}
+
+	public double getQueueCost(int index) {
+		return queueCost[index];
+	}
+
+	public int indexOf(int x, int y) // finds a coordinate in the queue, -1 if it isn't there
+	{
+		for (int i = 0; i < queueSize; i++) {
+			if (queueX[i] == x && queueY[i] == y)
+				return i;
+		}
+		return -1;
+	}
+
+	public void removeNodeAt(int index) // takes any node out of the queue and moves everything behind it up a spot
+	{
+		queueSize--;
+		System.arraycopy(queueX, index + 1, queueX, index, queueSize - index);
+		System.arraycopy(queueY, index + 1, queueY, index, queueSize - index);
+		System.arraycopy(queueCost, index + 1, queueCost, index, queueSize - index);
+	}
+
+	public void resetQueueArray() // method to reset the priority queue on new runs of new mazes
+	{
+		queueX = new int[16];
+		queueY = new int[16];
+		queueCost = new double[16];
+		queueSize = 0;
+	}
+
+	public void appendNode(int x, int y, double nodeCost) // puts a node on the back of the queue without looking for
+															// its place, only for refilling a queue that was saved in
+															// order
+	{
+		if (queueSize == queueX.length) {
+			queueX = Arrays.copyOf(queueX, queueSize * 2);
+			queueY = Arrays.copyOf(queueY, queueSize * 2);
+			queueCost = Arrays.copyOf(queueCost, queueSize * 2);
+		}
+		queueX[queueSize] = x;
+		queueY[queueSize] = y;
+		queueCost[queueSize] = nodeCost;
+		queueSize++;
+	}
+
+	public void addPriorityNode(int x, int y, double nodeCost) // I realise that there is already a priority queue
+																// library in java but I wanted the queue to store
+																// extra information (i.e the (x, y) coordinate as
+																// well as the nodeCost)
+	{
 		boolean duplicatePNodeFound = false; // to avoid adding the same node twice we have to do a check first
-		int countNode = arrayLength - 1;
+		int countNode = queueSize - 1;
 
 		while (countNode >= 0 && duplicatePNodeFound == false) // we compare each (x, y) coordinate already in our
 																// priority queue to the nodes (x, y) coordinate we want
 																// to add
 		{
-			if (priorityNode.getX() == priorityQueue[countNode].getX() && // if we find a duplicate node being added to
-																			// our queue then we just don't add the node
-					priorityNode.getY() == priorityQueue[countNode].getY())
+			if (x == queueX[countNode] && y == queueY[countNode]) // if we find a duplicate node being added to our
+																	// queue then we just don't add the node
 				duplicatePNodeFound = true;
 			countNode--;
-
 		}
 
 		if (duplicatePNodeFound == false) // as long as we don't find a duped node then we can add it
 		{
-			for (int countMaze1 = 0; countMaze1 < arrayLength; countMaze1++) // firstly we compare the nodes node cost
-																				// value to the other nodecost values in
-																				// our queue
+			int positionCounter = 0;
+			for (int countMaze1 = 0; countMaze1 < queueSize; countMaze1++) // every time we find a node cost value
+																			// that the node we are adding is greater
+																			// than then we increment the position
+																			// counter
 			{
-				if (priorityNode.getNodeCost() > priorityQueue[countMaze1].getNodeCost()) {
-					positionCounter++; // every time we find a node cost value that the node we are adding is greater
-										// than then we increment the position counter
-				}
+				if (nodeCost > queueCost[countMaze1])
+					positionCounter++;
 			}
 
-			if (positionCounter > 0) // as long as the position counter is not the position 0 in our queue then we
-										// add the nodes in front of the node first
+			if (queueSize == queueX.length) // we only grow the arrays when they are full
 			{
-				for (int countMaze2 = 0; countMaze2 < positionCounter; ++countMaze2) {
-					newArray[countMaze2] = priorityQueue[countMaze2];
-				}
+				queueX = Arrays.copyOf(queueX, queueSize * 2);
+				queueY = Arrays.copyOf(queueY, queueSize * 2);
+				queueCost = Arrays.copyOf(queueCost, queueSize * 2);
 			}
 
-			newArray[positionCounter] = priorityNode; // the position of the node we are adding is denoted by the value
-														// of the position counter we calculated above (we insert the
-														// priority node in the position)
-			for (int countMaze3 = positionCounter; countMaze3 < arrayLength; countMaze3++) // for every element that our
-																							// added node has a lower
-																							// nodecost value than the
-																							// ones in our queue then we
-																							// add these values last
-			{
-				newArray[countMaze3 + 1] = priorityQueue[countMaze3];
-			}
-			priorityQueue = newArray; // our priority queue is now set to the new array we created
+			int moving = queueSize - positionCounter; // every node with a higher node cost shifts one place back
+			System.arraycopy(queueX, positionCounter, queueX, positionCounter + 1, moving);
+			System.arraycopy(queueY, positionCounter, queueY, positionCounter + 1, moving);
+			System.arraycopy(queueCost, positionCounter, queueCost, positionCounter + 1, moving);
+
+			queueX[positionCounter] = x; // the position of the node we are adding is denoted by the value of the
+			queueY[positionCounter] = y; // position counter we calculated above
+			queueCost[positionCounter] = nodeCost;
+			queueSize++;
 		}
 		// else System.out.print("Dupe found");
 	}
 
-	public void removeTraversedNode() // this method removes the last element we added to our priority queue when we
+	public void removeTraversedNode() // this method removes the node at the front of our priority queue when we
 										// expand the node
 	{
-		int arrayLength = (priorityQueue.length);
-		PriorityNode[] newArray = new PriorityNode[arrayLength - 1]; // we make our new array a size less than our old
-																		// one
+		queueSize--;
+		System.arraycopy(queueX, 1, queueX, 0, queueSize); // every node in our priority queue is moved up a spot
+		System.arraycopy(queueY, 1, queueY, 0, queueSize);
+		System.arraycopy(queueCost, 1, queueCost, 0, queueSize);
+	}
+}
+
+class CoordinateMap // a hashmap from an (x, y) coordinate to a long value. The coordinate is packed into a single long
+					// and we use open addressing over plain arrays, so unlike a HashMap with ArrayList keys neither
+					// looking up nor adding a coordinate creates any objects
+{
+	static final long EMPTY = Long.MIN_VALUE; // no maze coordinate packs to this value
+
+	private long[] keys;
+	private long[] values;
+	private int size;
+
+	CoordinateMap() {
+		keys = new long[64];
+		values = new long[64];
+		Arrays.fill(keys, EMPTY);
+	}
+
+	static long pack(int x, int y) // packs an (x, y) coordinate into one long
+	{
+		return ((long) x << 32) | (y & 0xffffffffL);
+	}
+
+	static int unpackX(long packed) {
+		return (int) (packed >> 32);
+	}
+
+	static int unpackY(long packed) {
+		return (int) packed;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private int home(long key) // the slot a key would like to be in
+	{
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & (keys.length - 1);
+	}
+
+	private int slot(long key) // finds the slot holding our key or the empty slot where it would go
+	{
+		int mask = keys.length - 1;
+		int index = home(key);
+		while (keys[index] != EMPTY && keys[index] != key)
+			index = (index + 1) & mask;
+		return index;
+	}
+
+	public boolean containsKey(int x, int y) {
+		return keys[slot(pack(x, y))] != EMPTY;
+	}
+
+	public long get(int x, int y, long missing) // returns the value for a coordinate or "missing" if we've never
+												// stored one
+	{
+		int index = slot(pack(x, y));
+		return keys[index] == EMPTY ? missing : values[index];
+	}
+
+	public void put(int x, int y, long value) {
+		long key = pack(x, y);
+		int index = slot(key);
+		if (keys[index] == EMPTY) {
+			keys[index] = key;
+			size++;
+		}
+		values[index] = value;
+		if (size * 2 > keys.length) // keep the table at most half full so probes stay short
+			grow();
+	}
+
+	public void remove(int x, int y) // empties a slot and shuffles back any keys that had to probe past it so they
+										// can still be found
+	{
+		int mask = keys.length - 1;
+		int gap = slot(pack(x, y));
+		if (keys[gap] == EMPTY)
+			return;
+		keys[gap] = EMPTY;
+		size--;
+
+		int index = gap;
+		while (true) {
+			index = (index + 1) & mask;
+			if (keys[index] == EMPTY)
+				return;
+			int want = home(keys[index]);
+			boolean canMove = gap <= index ? (want <= gap || want > index) : (want <= gap && want > index);
+			if (canMove) {
+				keys[gap] = keys[index];
+				values[gap] = values[index];
+				keys[index] = EMPTY;
+				gap = index;
+			}
+		}
+	}
+
+	public int capacity() // how many slots there are, so we can walk over every entry with keyAt and valueAt
+	{
+		return keys.length;
+	}
+
+	public long keyAt(int slot) // the packed coordinate in a slot, or EMPTY if nothing is there
+	{
+		return keys[slot];
+	}
+
+	public long valueAt(int slot) {
+		return values[slot];
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		long[] oldValues = values;
+		keys = new long[oldKeys.length * 2];
+		values = new long[oldKeys.length * 2];
+		Arrays.fill(keys, EMPTY);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY) {
+				int index = slot(oldKeys[i]);
+				keys[index] = oldKeys[i];
+				values[index] = oldValues[i];
+			}
+		}
+	}
+}
+
+class OccupancyMap // a local map of everything the robot has sensed so far. Every cell takes 2 bits (unknown, wall,
+					// open or visited) and 32 cells are packed into each long. The map grows as the robot finds
+					// cells further out
+{
+	static final int UNKNOWN = 0; // we've never looked at this cell
+	static final int WALL = 1;
+	static final int OPEN = 2; // a passage nobody has expanded yet
+	static final int VISITED = 3; // a passage the robot has been on (or that we've expanded from the map)
+
+	private long[] cells;
+	private int width;
+	private int height;
+	private long[] journal; // every cell we've changed since our last checkpoint, null unless we're checkpointing
+	private int journalLength;
+
+	OccupancyMap() {
+		width = 32;
+		height = 32;
+		cells = new long[width * height / 32];
+	}
+
+	public OccupancyMap copy() {
+		OccupancyMap copy = new OccupancyMap();
+		copy.width = width;
+		copy.height = height;
+		copy.cells = cells.clone();
+		return copy;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int get(int x, int y) {
+		if (x < 0 || y < 0)
+			return WALL; // nothing exists outside the maze
+		if (x >= width || y >= height)
+			return UNKNOWN;
+		int index = y * width + x;
+		return (int) (cells[index >> 5] >>> ((index & 31) << 1)) & 3;
+	}
+
+	public void set(int x, int y, int state) {
+		if (x < 0 || y < 0)
+			return;
+		if (journal != null && get(x, y) != state) {
+			if (journalLength == journal.length)
+				journal = Arrays.copyOf(journal, journalLength * 2);
+			journal[journalLength++] = ((long) x << 34) | ((long) y << 2) | state; // x, y and state in one long
+		}
+		store(x, y, state);
+	}
+
+	private void store(int x, int y, int state) {
+		if (x >= width || y >= height)
+			grow(Math.max(width, x + 1), Math.max(height, y + 1));
+		int index = y * width + x;
+		int shift = (index & 31) << 1;
+		cells[index >> 5] = (cells[index >> 5] & ~(3L << shift)) | ((long) state << shift);
+	}
+
+	public void startJournal() {
+		journal = new long[64];
+		journalLength = 0;
+	}
+
+	public long[] getJournal() {
+		return journal;
+	}
+
+	public int getJournalLength() {
+		return journalLength;
+	}
+
+	public void clearJournal() {
+		journalLength = 0;
+	}
+
+	public void forgetVisits() // turns every visited cell back into an open one
+	{
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				if (get(x, y) == VISITED)
+					set(x, y, OPEN); // through set so the journal sees it
+			}
+		}
+	}
+
+	static int journalX(long change) {
+		return (int) (change >>> 34);
+	}
+
+	static int journalY(long change) {
+		return (int) (change >>> 2); // the cast drops x
+	}
+
+	static int journalState(long change) {
+		return (int) change & 3;
+	}
+
+	public boolean knowsNeighbours(int x, int y) // true once all four cells around (x, y) have been sensed
+	{
+		return get(x, y - 1) != UNKNOWN && get(x + 1, y) != UNKNOWN && get(x, y + 1) != UNKNOWN
+				&& get(x - 1, y) != UNKNOWN;
+	}
+
+	public int countWalls(int x, int y) // counts the known walls around a cell. Junctions are the same as crossroads
+										// so we don't need to account for a fourth state
+	{
+		int wallNumber = 0;
+		if (get(x, y - 1) == WALL)
+			wallNumber++;
+		if (get(x + 1, y) == WALL)
+			wallNumber++;
+		if (get(x, y + 1) == WALL)
+			wallNumber++;
+		if (get(x - 1, y) == WALL)
+			wallNumber++;
+		if (wallNumber == 0)
+			wallNumber++;
+		return wallNumber;
+	}
+
+	public int fillDeadEnds(int startX, int startY, int goalX, int goalY) // dead end filling for planning: any known
+																			// passage with at most one passable
+																			// neighbour (unknown cells count as
+																			// walls) is filled in, over and over
+																			// until only the corridors between the
+																			// start and goal are left
+	{
+		int[] stack = new int[64];
+		int stackSize = 0;
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				if (isPassable(x, y, goalX, goalY)) {
+					if (stackSize == stack.length)
+						stack = Arrays.copyOf(stack, stackSize * 2);
+					stack[stackSize++] = y * width + x;
+				}
+			}
+		}
+
+		int filled = 0;
+		while (stackSize > 0) {
+			int cell = stack[--stackSize];
+			int x = cell % width;
+			int y = cell / width;
+			if ((x == startX && y == startY) || (x == goalX && y == goalY) || isPassable(x, y, goalX, goalY) == false)
+				continue;
+			int exits = 0;
+			if (isPassable(x, y - 1, goalX, goalY))
+				exits++;
+			if (isPassable(x + 1, y, goalX, goalY))
+				exits++;
+			if (isPassable(x, y + 1, goalX, goalY))
+				exits++;
+			if (isPassable(x - 1, y, goalX, goalY))
+				exits++;
+			if (exits > 1)
+				continue;
+
+			set(x, y, WALL);
+			filled++;
+			if (stackSize + 4 > stack.length)
+				stack = Arrays.copyOf(stack, stack.length * 2);
+			if (y > 0)
+				stack[stackSize++] = cell - width; // its neighbours might be dead ends now
+			if (x + 1 < width)
+				stack[stackSize++] = cell + 1;
+			if (y + 1 < height)
+				stack[stackSize++] = cell + width;
+			if (x > 0)
+				stack[stackSize++] = cell - 1;
+		}
+		return filled;
+	}
+
+	private boolean isPassable(int x, int y, int goalX, int goalY) {
+		int state = get(x, y);
+		return state == OPEN || state == VISITED || (x == goalX && y == goalY && state != WALL);
+	}
+
+	public boolean mergeFrom(OccupancyMap other) // copies in every cell the other map knows and we don't, returns
+													// true if we learnt anything
+	{
+		boolean learnt = false;
+		for (int y = 0; y < other.height; y++) {
+			for (int x = 0; x < other.width; x++) {
+				int state = other.get(x, y);
+				if (state != UNKNOWN && get(x, y) == UNKNOWN) {
+					set(x, y, state);
+					learnt = true;
+				}
+			}
+		}
+		return learnt;
+	}
+
+	public void fillPassableBits(long[] bits, int words) // sets a bit for every open or visited cell with "words"
+															// longs per row, 64 cells to a long
+	{
+		int perRow = width >> 5; // the map is always a multiple of 32 wide so every row starts on a new long
+		for (int y = 0; y < height; y++) {
+			for (int k = 0; k < perRow; k++) {
+				long pairs = (cells[y * perRow + k] >>> 1) & 0x5555555555555555L; // open and visited both have the
+																				// high bit of their pair set
+				pairs = (pairs | (pairs >>> 1)) & 0x3333333333333333L; // squeeze every other bit together
+				pairs = (pairs | (pairs >>> 2)) & 0x0f0f0f0f0f0f0f0fL;
+				pairs = (pairs | (pairs >>> 4)) & 0x00ff00ff00ff00ffL;
+				pairs = (pairs | (pairs >>> 8)) & 0x0000ffff0000ffffL;
+				pairs = (pairs | (pairs >>> 16)) & 0x00000000ffffffffL;
+				bits[y * words + (k >> 1)] |= pairs << ((k & 1) << 5);
+			}
+		}
+	}
+
+	private void grow(int minWidth, int minHeight) // doubles the map until the new cell fits and copies everything over
+	{
+		int newWidth = width;
+		int newHeight = height;
+		while (newWidth < minWidth)
+			newWidth *= 2;
+		while (newHeight < minHeight)
+			newHeight *= 2;
+
+		long[] oldCells = cells;
+		int oldWidth = width;
+		int oldHeight = height;
+		cells = new long[(newWidth * newHeight + 31) / 32];
+		width = newWidth;
+		height = newHeight;
+		for (int y = 0; y < oldHeight; y++) {
+			for (int x = 0; x < oldWidth; x++) {
+				int oldIndex = y * oldWidth + x;
+				int state = (int) (oldCells[oldIndex >> 5] >>> ((oldIndex & 31) << 1)) & 3;
+				if (state != UNKNOWN)
+					store(x, y, state); // these cells haven't changed so they don't go in the journal
+			}
+		}
+	}
+}
+
+class AnytimeSearch // an ARA* style search over the cells in our occupancy map. The first pass inflates the
+					// heuristic by epsilon so it finds a path quickly, then every pass after that lowers epsilon and
+					// reuses the work already done until we reach epsilon = 1 (an optimal path). It can be stopped
+					// whenever its time budget runs out and picks up where it left off on the next call
+{
+	private static final int INFINITE = Integer.MAX_VALUE / 2;
+	private static final int IN_OPEN = 1; // cell status flags
+	private static final int IN_CLOSED = 2;
+	private static final int IN_INCONS = 4; // closed cells whose g value improved during this pass
+	private static final double EPSILON_STEP = 0.5; // how much we lower epsilon by after each pass
+	private static final int SEARCHING = 0; // what we're in the middle of, so running out of time between passes
+	private static final int PUBLISHING = 1; // doesn't lose our place
+	private static final int BOUNDING = 2;
+	private static final int REOPENING = 3;
+
+	private final OccupancyMap occupancy;
+	private final int width;
+	private final int height;
+	private final int startIndex;
+	private final int goalIndex;
+	private final int goalX;
+	private final int goalY;
+	private final int[] g; // cost from the start to each cell
+	private final int[] parent; // the cell we reached each cell from
+	private final byte[] status;
+	private int[] heapCells = new int[64]; // binary heap of open cells, stale entries are skipped when popped
+	private double[] heapKeys = new double[64];
+	private int heapSize;
+	private double epsilon;
+	private double bound = Double.POSITIVE_INFINITY; // our current path is at most this many times the optimal one
+	private int[][] path; // the best path found so far from the start to the goal
+	private boolean finished;
+	private int expansions;
+	private CellList opened = new CellList(); // every cell we opened this pass, some of them have been closed since
+	private CellList closed = new CellList(); // every cell we closed this pass
+	private int phase = SEARCHING;
+	private int scanIndex; // how far through opened and then closed we are when bounding or reopening
+	private int lowest; // the lowest unweighted f value we've found so far while bounding
+	private CellList reopened = new CellList(); // the cells we've opened again for the next pass so far
+	private int[][] newPath; // the path we're part way through publishing, null until we know how long it is
+	private int publishCell; // where we are on the chain of parents back from the goal
+	private int publishIndex; // how many cells long the chain is so far, then which row we're filling in
+
+	AnytimeSearch(OccupancyMap occupancy, int startX, int startY, int goalX, int goalY, double epsilon) {
+		this.occupancy = occupancy;
+		this.width = occupancy.getWidth();
+		this.height = occupancy.getHeight();
+		this.goalX = goalX;
+		this.goalY = goalY;
+		this.epsilon = epsilon;
+		startIndex = startY * width + startX;
+		goalIndex = goalY * width + goalX;
+		g = new int[width * height];
+		parent = new int[width * height];
+		status = new byte[width * height];
+		Arrays.fill(g, INFINITE);
+		Arrays.fill(parent, -1);
+
+		g[startIndex] = 0;
+		status[startIndex] = IN_OPEN;
+		opened.add(startIndex);
+		push(startIndex);
+	}
+
+	public double getBound() {
+		return bound;
+	}
+
+	public int[][] getPath() // the best path so far including the start and goal, or null if we haven't got one
+	{
+		return path;
+	}
+
+	public boolean isFinished() // true once the path is optimal or we know there isn't one
+	{
+		return finished;
+	}
+
+	public int getExpansions() {
+		return expansions;
+	}
+
+	public void improve(long budgetNanos) // searches until the budget runs out or the path is optimal
+	{
+		long deadline = System.nanoTime() + budgetNanos;
+		while (finished == false) {
+			if (phase == SEARCHING) {
+				if (improvePath(deadline) == false)
+					return; // out of time, we carry on from here next call
+
+				if (g[goalIndex] >= INFINITE) // the open list ran dry without reaching the goal
+				{
+					finished = true;
+					return;
+				}
+				phase = PUBLISHING;
+				publishCell = goalIndex;
+				publishIndex = 1;
+			}
+			if (phase == PUBLISHING) {
+				if (publishPath(deadline) == false)
+					return;
+				phase = BOUNDING;
+				scanIndex = 0;
+				lowest = INFINITE;
+			}
+			if (phase == BOUNDING) {
+				if (findBound(deadline) == false)
+					return;
+				if (epsilon <= 1) {
+					bound = 1;
+					finished = true;
+					return;
+				}
+				epsilon = Math.max(1, epsilon - EPSILON_STEP); // tighten the heuristic and go again, everything
+																// that changed after being closed is opened back up
+				phase = REOPENING;
+				scanIndex = 0;
+				heapSize = 0;
+				reopened.clear();
+			}
+			if (reopen(deadline) == false)
+				return;
+			phase = SEARCHING;
+		}
+	}
+
+	private boolean findBound(long deadline) // no path can be shorter than the lowest unweighted f value left to look
+												// at, which is in a cell that's still open or one that got cheaper
+												// after it was closed. Returns false if we ran out of time first
+	{
+		for (; scanIndex < opened.size() + closed.size(); scanIndex++) {
+			if ((scanIndex & 1023) == 0 && System.nanoTime() > deadline)
+				return false;
+			int cell = scanIndex < opened.size() ? opened.get(scanIndex) : closed.get(scanIndex - opened.size());
+			if ((status[cell] & (IN_OPEN | IN_INCONS)) != 0)
+				lowest = Math.min(lowest, g[cell] + heuristic(cell));
+		}
+		bound = lowest >= g[goalIndex] ? 1 : Math.min(epsilon, (double) g[goalIndex] / lowest);
+		return true;
+	}
+
+	private boolean reopen(long deadline) // starts the next pass with every cell that's still open or got cheaper
+											// after it was closed, and forgets the rest of what we closed. Only
+											// touches the cells this pass did so it's never a scan of the whole map
+	{
+		for (; scanIndex < opened.size() + closed.size(); scanIndex++) {
+			if ((scanIndex & 1023) == 0 && System.nanoTime() > deadline)
+				return false;
+			int cell;
+			if (scanIndex < opened.size()) {
+				cell = opened.get(scanIndex);
+				if (status[cell] != IN_OPEN)
+					continue; // it was closed since so we deal with it below
+			} else {
+				cell = closed.get(scanIndex - opened.size());
+				if ((status[cell] & IN_INCONS) == 0) {
+					status[cell] = 0;
+					continue;
+				}
+				status[cell] = IN_OPEN;
+			}
+			reopened.add(cell);
+			push(cell);
+		}
+		CellList swap = opened; // the cells we reopened are the first ones opened in the next pass
+		opened = reopened;
+		reopened = swap;
+		closed.clear();
+		return true;
+	}
+
+	private boolean improvePath(long deadline) // one ARA* pass, returns false if we ran out of time first
+	{
+		while (heapSize > 0 && heapKeys[0] < g[goalIndex]) {
+			if ((expansions & 63) == 0 && System.nanoTime() > deadline)
+				return false;
+
+			double key = heapKeys[0];
+			int cell = pop();
+			if (status[cell] != IN_OPEN || key != key(cell))
+				continue; // a stale copy of a cell we've since reached more cheaply
+
+			status[cell] = IN_CLOSED;
+			closed.add(cell);
+			expansions++;
+			int x = cell % width;
+			int y = cell / width;
+			relax(cell, x, y - 1);
+			relax(cell, x + 1, y);
+			relax(cell, x, y + 1);
+			relax(cell, x - 1, y);
+		}
+		return true;
+	}
+
+	private void relax(int cell, int x, int y) // checks if going through "cell" is a cheaper way to reach (x, y)
+	{
+		if (x < 0 || y < 0 || x >= width || y >= height)
+			return;
+		int next = y * width + x;
+		int state = occupancy.get(x, y);
+		if (next != goalIndex && state != OccupancyMap.OPEN && state != OccupancyMap.VISITED)
+			return; // we only plan through cells we know are passages
+		if (g[cell] + 1 >= g[next])
+			return;
+
+		g[next] = g[cell] + 1;
+		parent[next] = cell;
+		if ((status[next] & IN_CLOSED) == 0) {
+			if (status[next] == 0)
+				opened.add(next);
+			status[next] = IN_OPEN;
+			push(next);
+		} else
+			status[next] |= IN_INCONS;
+	}
+
+	private boolean publishPath(long deadline) // stores the path to the goal a piece at a time, returns false if we
+												// ran out of time first
+	{
+		if (newPath == null) {
+			for (; publishCell != startIndex; publishCell = parent[publishCell]) {
+				if ((publishIndex & 1023) == 0 && System.nanoTime() > deadline)
+					return false;
+				publishIndex++; // a parent can get cheaper after its child was reached, so the chain back to the
+								// start can be shorter than g(goal) and we count it rather than trusting g
+			}
+			newPath = new int[publishIndex][2];
+			publishCell = goalIndex;
+			publishIndex--;
+		}
+		for (; publishIndex >= 0; publishIndex--) {
+			if ((publishIndex & 1023) == 0 && System.nanoTime() > deadline)
+				return false;
+			newPath[publishIndex][0] = publishCell % width;
+			newPath[publishIndex][1] = publishCell / width;
+			publishCell = parent[publishCell];
+		}
+		path = newPath; // our old bound still holds for this path until findBound works out a better one
+		newPath = null;
+		return true;
+	}
+
+	private int heuristic(int cell) // manhattan distance to the goal which never overestimates on a grid
+	{
+		return Math.abs(cell % width - goalX) + Math.abs(cell / width - goalY);
+	}
+
+	private double key(int cell) {
+		return g[cell] + epsilon * heuristic(cell);
+	}
+
+	private void push(int cell) {
+		if (heapSize == heapCells.length) {
+			heapCells = Arrays.copyOf(heapCells, heapSize * 2);
+			heapKeys = Arrays.copyOf(heapKeys, heapSize * 2);
+		}
+		double key = key(cell);
+		int i = heapSize++;
+		while (i > 0 && heapKeys[(i - 1) / 2] > key) // sift up
+		{
+			heapCells[i] = heapCells[(i - 1) / 2];
+			heapKeys[i] = heapKeys[(i - 1) / 2];
+			i = (i - 1) / 2;
+		}
+		heapCells[i] = cell;
+		heapKeys[i] = key;
+	}
 
-		for (int countMaze2 = 1; countMaze2 < arrayLength; countMaze2++) // we then duplicate our array to a temporary
-																			// array and every node in our priority
-																			// queue is moved up a spot
+	private int pop() {
+		int top = heapCells[0];
+		heapSize--;
+		int cell = heapCells[heapSize];
+		double key = heapKeys[heapSize];
+		int i = 0;
+		while (2 * i + 1 < heapSize) // sift down
 		{
-			newArray[countMaze2 - 1] = priorityQueue[countMaze2];
+			int child = 2 * i + 1;
+			if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child])
+				child++;
+			if (heapKeys[child] >= key)
+				break;
+			heapCells[i] = heapCells[child];
+			heapKeys[i] = heapKeys[child];
+			i = child;
+		}
+		heapCells[i] = cell;
+		heapKeys[i] = key;
+		return top;
+	}
+}
+
+class CellList // a growable list of cell indexes kept in fixed size chunks, so growing it never has to copy the cells
+				// already in it (copying a list of millions of cells in one go blows a tick's budget)
+{
+	private static final int CHUNK_BITS = 12; // 4096 cells per chunk
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+	private int[][] chunks = new int[4][];
+	private int size;
+
+	public int size() {
+		return size;
+	}
+
+	public int get(int index) {
+		return chunks[index >>> CHUNK_BITS][index & (CHUNK_SIZE - 1)];
+	}
+
+	public void add(int cell) {
+		int chunk = size >>> CHUNK_BITS;
+		if (chunk == chunks.length)
+			chunks = Arrays.copyOf(chunks, chunks.length * 2); // only copies the references to each chunk
+		if (chunks[chunk] == null)
+			chunks[chunk] = new int[CHUNK_SIZE];
+		chunks[chunk][size & (CHUNK_SIZE - 1)] = cell;
+		size++;
+	}
+
+	public void clear() // keeps the chunks so we can fill them again
+	{
+		size = 0;
+	}
+}
+
+class BitboardSearch // a breadth first search over the cells in our occupancy map where every row is stored as bits,
+						// 64 cells to a long. The whole wavefront moves one step at a time by shifting each row left
+						// and right and or-ing in the rows above and below, then masking with the open cells we
+						// haven't reached yet, so one long operation moves up to 64 cells at once
+{
+	private final int width;
+	private final int height;
+	private final int words; // longs per row, always a power of two so we can find a long's column with a mask
+	private final long[] open; // cells we can move through
+	private final long[] reached; // cells the wave has already touched
+	private final long[] layerLow; // the distance to every reached cell mod 3, split over two bits. Its neighbours
+	private final long[] layerHigh; // are always one less, the same or one more so mod 3 is enough to walk back
+	private final int startX;
+	private final int startY;
+	private final int goalX;
+	private final int goalY;
+	private int[][] path; // the shortest path including the start and goal, or null if there isn't one
+	private int cellsReached;
+
+	BitboardSearch(OccupancyMap occupancy, int startX, int startY, int goalX, int goalY) {
+		this.width = Math.max(occupancy.getWidth(), Math.max(startX, goalX) + 1);
+		this.height = Math.max(occupancy.getHeight(), Math.max(startY, goalY) + 1);
+		this.words = Integer.highestOneBit(Math.max(1, (width + 63) >>> 6) * 2 - 1);
+		this.startX = startX;
+		this.startY = startY;
+		this.goalX = goalX;
+		this.goalY = goalY;
+		open = new long[words * height];
+		reached = new long[words * height];
+		layerLow = new long[words * height];
+		layerHigh = new long[words * height];
+		occupancy.fillPassableBits(open, words);
+		open[startY * words + (startX >>> 6)] |= 1L << startX;
+		if (occupancy.get(goalX, goalY) != OccupancyMap.WALL) // we may not have stood on the target yet
+			open[goalY * words + (goalX >>> 6)] |= 1L << goalX;
+
+		int layers = search();
+		if (layers >= 0)
+			tracePath(layers);
+	}
+
+	public int[][] getPath() {
+		return path;
+	}
+
+	public int getCellsReached() {
+		return cellsReached;
+	}
+
+	private int search() // spreads the wave from the start until it reaches the goal, returns the goal's distance
+							// or -1 if the goal can't be reached
+	{
+		long[] wave = new long[words * height];
+		long[] next = new long[words * height];
+		int[] active = new int[64]; // the longs of the wave that have any cells in them, so a thin wave winding
+		int activeCount = 0; // through a big maze doesn't make us look at every row each step
+		int[] nextActive = new int[64];
+		int[] checked = new int[words * height]; // the step each long was last worked out on
+		int goalWord = goalY * words + (goalX >>> 6);
+		long goalBit = 1L << goalX;
+		int startWord = startY * words + (startX >>> 6);
+		wave[startWord] = 1L << startX;
+		reached[startWord] = 1L << startX;
+		active[activeCount++] = startWord;
+		cellsReached = 1;
+
+		for (int distance = 0;; distance++) {
+			if ((wave[goalWord] & goalBit) != 0)
+				return distance;
+
+			int step = distance + 1;
+			int layer = step % 3;
+			int nextCount = 0;
+			for (int a = 0; a < activeCount; a++) {
+				int i = active[a];
+				int w = i & (words - 1);
+				for (int n = 0; n < 5; n++) { // wave cells in long i can only move into i or the longs next to it
+					int c;
+					if (n == 0)
+						c = i;
+					else if (n == 1) {
+						if (w == 0)
+							continue;
+						c = i - 1;
+					} else if (n == 2) {
+						if (w == words - 1)
+							continue;
+						c = i + 1;
+					} else if (n == 3) {
+						if (i < words)
+							continue;
+						c = i - words;
+					} else {
+						if (i + words >= wave.length)
+							continue;
+						c = i + words;
+					}
+					if (checked[c] == step)
+						continue;
+					checked[c] = step;
+
+					int cw = c & (words - 1);
+					long here = wave[c];
+					long spread = (here << 1) | (here >>> 1); // east and west within this long
+					if (cw > 0)
+						spread |= wave[c - 1] >>> 63; // the last cell of the long to our left moves east
+					if (cw < words - 1)
+						spread |= wave[c + 1] << 63; // the first cell of the long to our right moves west
+					if (c >= words)
+						spread |= wave[c - words]; // south from the row above
+					if (c + words < wave.length)
+						spread |= wave[c + words]; // north from the row below
+					long fresh = spread & open[c] & ~reached[c];
+					if (fresh == 0)
+						continue;
+					next[c] = fresh;
+					reached[c] |= fresh;
+					if ((layer & 1) != 0)
+						layerLow[c] |= fresh;
+					if ((layer & 2) != 0)
+						layerHigh[c] |= fresh;
+					cellsReached += Long.bitCount(fresh);
+					if (nextCount == nextActive.length)
+						nextActive = Arrays.copyOf(nextActive, nextCount * 2);
+					nextActive[nextCount++] = c;
+				}
+			}
+			if (nextCount == 0)
+				return -1; // the wave died out without reaching the goal
+
+			for (int a = 0; a < activeCount; a++)
+				wave[active[a]] = 0; // clear the old wave so the array is all zeros when we fill it next step
+			long[] swapWave = wave;
+			wave = next;
+			next = swapWave;
+			int[] swapActive = active;
+			active = nextActive;
+			nextActive = swapActive;
+			activeCount = nextCount;
+		}
+	}
+
+	private void tracePath(int distance) // walks back from the goal, always to a neighbour one step closer to the
+											// start
+	{
+		path = new int[distance + 1][2];
+		int x = goalX;
+		int y = goalY;
+		for (int d = distance; d > 0; d--) {
+			path[d][0] = x;
+			path[d][1] = y;
+			int layer = (d - 1) % 3;
+			if (inLayer(x, y - 1, layer))
+				y--;
+			else if (inLayer(x + 1, y, layer))
+				x++;
+			else if (inLayer(x, y + 1, layer))
+				y++;
+			else
+				x--;
+		}
+		path[0][0] = startX;
+		path[0][1] = startY;
+	}
+
+	private boolean inLayer(int x, int y, int layer) {
+		if (x < 0 || y < 0 || x >= width || y >= height)
+			return false;
+		int i = y * words + (x >>> 6);
+		long bit = 1L << x;
+		if ((reached[i] & bit) == 0)
+			return false;
+		int cellLayer = ((layerLow[i] & bit) != 0 ? 1 : 0) | ((layerHigh[i] & bit) != 0 ? 2 : 0);
+		return cellLayer == layer;
+	}
+}
+
+class FlowField // a table of which way to go from every known cell to reach one target. It comes from a single
+				// reverse breadth first search out from the target and every robot with the same target shares it,
+				// so steering is just one lookup per tick. Each cell's heading takes 2 bits
+{
+	private static final HashMap<Long, FlowField> fields = new HashMap<Long, FlowField>(); // shared between every
+																							// robot, keyed by the
+																							// packed target since
+																							// IRobot can't tell us
+																							// which maze we're in
+	private static final HashMap<Long, OccupancyMap> maps = new HashMap<Long, OccupancyMap>(); // everything every
+																								// robot heading for
+																								// a target has seen
+	private static int builds; // how many reverse searches we've run in total
+
+	private final int width;
+	private final int height;
+	private final int targetX;
+	private final int targetY;
+	private final long[] headings; // 2 bits per cell, 0 to 3 meaning north, east, south or west
+	private final long[] reached; // 1 bit per cell, set if the target can be reached from the cell
+	private int reachedCount;
+
+	private FlowField(OccupancyMap occupancy, int targetX, int targetY) // reverse BFS out from the target over every
+																		// cell we know is a passage
+	{
+		width = occupancy.getWidth();
+		height = occupancy.getHeight();
+		this.targetX = targetX;
+		this.targetY = targetY;
+		headings = new long[(width * height + 31) / 32];
+		reached = new long[(width * height + 63) / 64];
+
+		int[] queue = new int[width * height];
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = targetY * width + targetX;
+		markReached(targetY * width + targetX);
+		while (head < tail) {
+			int cell = queue[head++];
+			int x = cell % width;
+			int y = cell / width;
+			tail = visit(occupancy, queue, tail, x, y - 1, 2); // the cell north of us has to head south to get here
+			tail = visit(occupancy, queue, tail, x + 1, y, 3);
+			tail = visit(occupancy, queue, tail, x, y + 1, 0);
+			tail = visit(occupancy, queue, tail, x - 1, y, 1);
+		}
+	}
+
+	private int visit(OccupancyMap occupancy, int[] queue, int tail, int x, int y, int heading) {
+		if (x < 0 || y < 0 || x >= width || y >= height)
+			return tail;
+		int cell = y * width + x;
+		int state = occupancy.get(x, y);
+		if ((state != OccupancyMap.OPEN && state != OccupancyMap.VISITED) || isReached(cell))
+			return tail;
+		markReached(cell);
+		headings[cell >> 5] |= (long) heading << ((cell & 31) << 1);
+		queue[tail] = cell;
+		return tail + 1;
+	}
+
+	private boolean isReached(int cell) {
+		return (reached[cell >> 6] & (1L << cell)) != 0;
+	}
+
+	private void markReached(int cell) {
+		reached[cell >> 6] |= 1L << cell;
+		reachedCount++;
+	}
+
+	public int getHeading(int x, int y) // the absolute heading to take from (x, y), or -1 if we don't have one
+	{
+		if (x < 0 || y < 0 || x >= width || y >= height || (x == targetX && y == targetY))
+			return -1;
+		int cell = y * width + x;
+		if (isReached(cell) == false)
+			return -1;
+		return IRobot.NORTH + ((int) (headings[cell >> 5] >>> ((cell & 31) << 1)) & 3);
+	}
+
+	public static synchronized FlowField lookup(int targetX, int targetY) {
+		return fields.get(CoordinateMap.pack(targetX, targetY));
+	}
+
+	public static synchronized void publish(OccupancyMap occupancy, int targetX, int targetY) // adds one robot's map
+																								// to what we know
+																								// about the target
+																								// and rebuilds its
+																								// field
+	{
+		Long key = CoordinateMap.pack(targetX, targetY);
+		OccupancyMap shared = maps.get(key);
+		if (shared == null) {
+			shared = new OccupancyMap();
+			maps.put(key, shared);
+		}
+		if (shared.mergeFrom(occupancy) == false && fields.containsKey(key))
+			return; // this robot didn't see anything new so the field we have is still the best one
+
+		fields.put(key, new FlowField(shared, targetX, targetY));
+		builds++;
+	}
+
+	public static synchronized void invalidate(int targetX, int targetY, FlowField field) // drops a field that
+																							// turned out to be wrong
+	{
+		if (fields.remove(CoordinateMap.pack(targetX, targetY), field))
+			maps.remove(CoordinateMap.pack(targetX, targetY)); // the map it was built from is just as wrong
+	}
+
+	public static synchronized void clear() // forget every field, e.g. when the maze is regenerated
+	{
+		fields.clear();
+		maps.clear();
+	}
+
+	public static synchronized int getBuilds() {
+		return builds;
+	}
+}
+
+class Checkpoint // a file holding our first run so far. It starts with a header saying which maze it's for and then
+					// has one block per checkpoint with everything that changed since the block before, so writing
+					// one costs about as much as what happened since the last one. Blocks are written on a
+					// background thread so the robot never waits for the disk, and if we were stopped half way
+					// through writing one its checksum won't match and it's ignored
+{
+	private static final int MAGIC = 0x47464350; // "GFCP"
+	private static final int VERSION = 2; // 2 added the children each backed up node forgot
+	private static final int HEADER_SIZE = 24;
+	private static final ExecutorService writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable task) {
+			Thread thread = new Thread(task, "checkpoint writer");
+			thread.setDaemon(true); // a checkpoint that's still queued when we exit just means losing the last one
+			return thread;
 		}
-		priorityQueue = newArray; // set our priority queue array as our temporary array
+	}); // one thread for every robot so the blocks of a file are always written in order
+
+	private final File file;
+	private boolean finished; // we found the target so there's nothing more to save
+	private int startX; // the start of the maze the file we loaded was saved on
+	private int startY;
+
+	Checkpoint(File file) {
+		this.file = file;
+	}
+
+	public int getStartX() {
+		return startX;
+	}
+
+	public int getStartY() {
+		return startY;
+	}
+
+	public void start(int startX, int startY, int targetX, int targetY) // throws away whatever the file had and
+																		// writes a new header
+	{
+		finished = false;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_SIZE);
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(startX);
+			out.writeInt(startY);
+			out.writeInt(targetX);
+			out.writeInt(targetY);
+		} catch (IOException e) {
+			return; // writing to memory doesn't fail
+		}
+		write(bytes.toByteArray(), false);
+	}
+
+	public void append(byte[] block) // adds a block on the end of the file as its length, the block and a checksum
+	{
+		if (finished)
+			return;
+		CRC32 crc = new CRC32();
+		crc.update(block);
+		byte[] framed = new byte[block.length + 8];
+		writeInt(framed, 0, block.length);
+		System.arraycopy(block, 0, framed, 4, block.length);
+		writeInt(framed, block.length + 4, (int) crc.getValue());
+		write(framed, true);
+	}
+
+	public void finish() {
+		finished = true;
+		writer.execute(new Runnable() {
+			public void run() {
+				file.delete();
+			}
+		});
+	}
+
+	public ArrayList<byte[]> load(int targetX, int targetY) // reads every whole block in the file if it was saved
+															// on a maze with this target, otherwise null
+	{
+		awaitWrites();
+		byte[] bytes;
+		try {
+			bytes = Files.readAllBytes(file.toPath());
+		} catch (IOException e) {
+			return null; // there's no checkpoint to carry on from
+		}
+		if (bytes.length < HEADER_SIZE || readInt(bytes, 0) != MAGIC || readInt(bytes, 4) != VERSION
+				|| readInt(bytes, 16) != targetX || readInt(bytes, 20) != targetY)
+			return null;
+		startX = readInt(bytes, 8);
+		startY = readInt(bytes, 12);
+
+		ArrayList<byte[]> blocks = new ArrayList<byte[]>();
+		int offset = HEADER_SIZE;
+		while (offset + 8 <= bytes.length) {
+			int length = readInt(bytes, offset);
+			if (length < 0 || length > bytes.length - offset - 8)
+				break; // we were stopped before this block was all written
+			CRC32 crc = new CRC32();
+			crc.update(bytes, offset + 4, length);
+			if ((int) crc.getValue() != readInt(bytes, offset + 4 + length))
+				break;
+			blocks.add(Arrays.copyOfRange(bytes, offset + 4, offset + 4 + length));
+			offset += length + 8;
+		}
+		if (offset < bytes.length)
+			truncate(offset); // anything we append has to go straight after the last good block
+		finished = false;
+		return blocks;
+	}
+
+	private void write(final byte[] bytes, final boolean append) {
+		writer.execute(new Runnable() {
+			public void run() {
+				try {
+					FileOutputStream out = new FileOutputStream(file, append);
+					try {
+						out.write(bytes);
+						out.getFD().sync(); // make sure it's on the disk before we write anything after it
+					} finally {
+						out.close();
+					}
+				} catch (IOException e) {
+					System.out.println("Couldn't write checkpoint: " + e.getMessage());
+				}
+			}
+		});
+	}
+
+	private void truncate(final long length) {
+		writer.execute(new Runnable() {
+			public void run() {
+				try {
+					RandomAccessFile out = new RandomAccessFile(file, "rw");
+					try {
+						out.setLength(length);
+					} finally {
+						out.close();
+					}
+				} catch (IOException e) {
+					System.out.println("Couldn't trim checkpoint: " + e.getMessage());
+				}
+			}
+		});
+	}
+
+	private void awaitWrites() // waits for anything still being written to the file so we read all of it
+	{
+		try {
+			writer.submit(new Runnable() {
+				public void run() {
+				}
+			}).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			return; // an empty task can't fail
+		}
+	}
+
+	private static void writeInt(byte[] bytes, int offset, int value) {
+		bytes[offset] = (byte) (value >>> 24);
+		bytes[offset + 1] = (byte) (value >>> 16);
+		bytes[offset + 2] = (byte) (value >>> 8);
+		bytes[offset + 3] = (byte) value;
+	}
+
+	private static int readInt(byte[] bytes, int offset) {
+		return ((bytes[offset] & 0xff) << 24) | ((bytes[offset + 1] & 0xff) << 16) | ((bytes[offset + 2] & 0xff) << 8)
+				| (bytes[offset + 3] & 0xff);
 	}
 }